@@ -0,0 +1,171 @@
+package digit_recognition;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Class providing the datasets of the benchmarks. A dataset is either one of
+ * the bundled CSV files or synthetic rows generated from a fixed seed, so that
+ * every run measures the same data without any download.
+ */
+final class BenchmarkData {
+    // Name of the parameter value selecting the first bundled dataset
+    static final String BUNDLED = "bundled";
+    // Directory of the bundled datasets, relative to the directory the benchmarks run from
+    private static final String DATASET_DIRECTORY = System.getProperty("digit_recognition.datasets", "datasets");
+    private static final String BUNDLED_FILE = "cw2DataSet1.csv";
+    private static final String BUNDLED_QUERY_FILE = "cw2DataSet2.csv";
+    // Number of held out synthetic rows used as queries
+    private static final int SYNTHETIC_QUERIES = 1000;
+    private static final long SEED = 20240101L;
+    private static final int FEATURES = DatasetReader.SINGLE_INPUT_SIZE - 1;
+    private static final int LABELS = 10;
+    private static final int MAX_FEATURE = 16;
+
+    // Utility class, not meant to be instantiated
+    private BenchmarkData() {
+    }
+
+    /**
+     * Gets the rows of a dataset, the features followed by the label.
+     *
+     * @param dataset "bundled" for the first bundled dataset, or a number of
+     *                synthetic rows
+     * @return the rows
+     */
+    static int[][] rows(String dataset) {
+        if (BUNDLED.equals(dataset)) {
+            return readBundled(BUNDLED_FILE);
+        }
+        return syntheticRows(Integer.parseInt(dataset));
+    }
+
+    /**
+     * Gets rows held out from a dataset, to classify against it.
+     *
+     * @param dataset "bundled" for the second bundled dataset, or a number of
+     *                synthetic rows followed by the held out rows
+     * @return the held out rows
+     */
+    static int[][] queries(String dataset) {
+        if (BUNDLED.equals(dataset)) {
+            return readBundled(BUNDLED_QUERY_FILE);
+        }
+        // The rows are generated in sequence, so the rows after the dataset come from the same prototypes
+        int count = Integer.parseInt(dataset);
+        int[][] rows = syntheticRows(count + SYNTHETIC_QUERIES);
+        return Arrays.copyOfRange(rows, count, rows.length);
+    }
+
+    /**
+     * Gets the path of a CSV file holding a dataset, writing the synthetic rows
+     * to a temporary file that is deleted when the JVM exits.
+     *
+     * @param dataset "bundled" for the first bundled dataset, or a number of
+     *                synthetic rows
+     * @return the path to the CSV file
+     */
+    static String csvFile(String dataset) {
+        if (BUNDLED.equals(dataset)) {
+            return Paths.get(DATASET_DIRECTORY, BUNDLED_FILE).toString();
+        }
+        try {
+            Path file = Files.createTempFile("digits-" + dataset + "-", ".csv");
+            file.toFile().deleteOnExit();
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+                StringBuilder line = new StringBuilder();
+                for (int[] row : syntheticRows(Integer.parseInt(dataset))) {
+                    line.setLength(0);
+                    for (int column = 0; column < row.length; column++) {
+                        line.append(column == 0 ? "" : ",").append(row[column]);
+                    }
+                    writer.write(line.append('\n').toString());
+                }
+            }
+            return file.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Converts rows to the features of the k-nearest neighbours.
+     *
+     * @param rows the rows
+     * @return the features, one row per data point
+     */
+    static double[][] features(int[][] rows) {
+        double[][] features = new double[rows.length][FEATURES];
+        for (int row = 0; row < rows.length; row++) {
+            for (int feature = 0; feature < FEATURES; feature++) {
+                features[row][feature] = rows[row][feature];
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Extracts the labels of rows.
+     *
+     * @param rows the rows
+     * @return the labels
+     */
+    static int[] labels(int[][] rows) {
+        int[] labels = new int[rows.length];
+        for (int row = 0; row < rows.length; row++) {
+            labels[row] = rows[row][FEATURES];
+        }
+        return labels;
+    }
+
+    /**
+     * Generates rows that look like the digits: every label has a random
+     * prototype and every row is its prototype with some noise, so that
+     * neighbours of the same label are closer than the others.
+     *
+     * @param count the number of rows
+     * @return the rows
+     */
+    private static int[][] syntheticRows(int count) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[][] prototypes = new int[LABELS][FEATURES];
+        for (int[] prototype : prototypes) {
+            for (int feature = 0; feature < FEATURES; feature++) {
+                prototype[feature] = random.nextInt(MAX_FEATURE + 1);
+            }
+        }
+        int[][] rows = new int[count][FEATURES + 1];
+        for (int[] row : rows) {
+            int label = random.nextInt(LABELS);
+            for (int feature = 0; feature < FEATURES; feature++) {
+                int value = prototypes[label][feature] + random.nextInt(-4, 5);
+                row[feature] = Math.max(0, Math.min(MAX_FEATURE, value));
+            }
+            row[FEATURES] = label;
+        }
+        return rows;
+    }
+
+    /**
+     * Reads one of the bundled datasets.
+     *
+     * @param fileName the name of the dataset file
+     * @return the rows
+     */
+    private static int[][] readBundled(String fileName) {
+        try {
+            return DatasetReader.readDataset(Paths.get(DATASET_DIRECTORY, fileName).toString());
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException("Run the benchmarks from the project directory or set "
+                    + "-Ddigit_recognition.datasets to the dataset directory", e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package digit_recognition;
+
+import java.io.FileNotFoundException;
+import java.util.Locale;
+
+/**
+ * Benchmark of how fast every optimizer and pair of activations converges. Unlike the JMH benchmarks,
+ * which time a single step, it trains whole networks on both folds of the
+ * bundled datasets one epoch at a time and scores them after every epoch.
+ * Every variant is compared with the accuracy plain gradient descent at a
+ * rate of 0.1, which the application trains with by default, reaches at the
+ * end of its schedule.
+ *
+ * Run it from the project directory:
+ * java -cp benchmarks/target/benchmarks.jar digit_recognition.ConvergenceBenchmark [epochs] [mode]
+ */
+public final class ConvergenceBenchmark {
+
+    /**
+     * Class describing one optimizer with its learning rate and schedule, and
+     * the activations of the hidden and output layers.
+     */
+    private static final class Variant {
+        private final Optimizer optimizer;
+        private final double learningRate;
+        private final LearningRateSchedule schedule;
+        private final Activation hiddenActivation;
+        private final Activation outputActivation;
+
+        // Constructor for a network of sigmoids
+        Variant(Optimizer optimizer, double learningRate, LearningRateSchedule schedule) {
+            this(optimizer, learningRate, schedule, Activation.SIGMOID, Activation.SIGMOID);
+        }
+
+        // Constructor
+        Variant(Optimizer optimizer, double learningRate, LearningRateSchedule schedule, Activation hiddenActivation,
+                Activation outputActivation) {
+            this.optimizer = optimizer;
+            this.learningRate = learningRate;
+            this.schedule = schedule;
+            this.hiddenActivation = hiddenActivation;
+            this.outputActivation = outputActivation;
+        }
+
+        // Name of the variant in the results, with the activations unless they are all sigmoids
+        String name() {
+            String name = optimizer + " " + learningRate + " " + schedule;
+            if (hiddenActivation != Activation.SIGMOID || outputActivation != Activation.SIGMOID) {
+                name += " " + hiddenActivation + "/" + outputActivation;
+            }
+            return name;
+        }
+    }
+
+    // The first variant sets the accuracy the others have to reach
+    private static final Variant[] VARIANTS = {
+            new Variant(Optimizer.SGD, 0.1, LearningRateSchedule.CONSTANT),
+            new Variant(Optimizer.SGD, 0.1, LearningRateSchedule.STEP),
+            new Variant(Optimizer.SGD, 0.1, LearningRateSchedule.COSINE),
+            new Variant(Optimizer.SGD, 0.3, LearningRateSchedule.WARMUP_COSINE),
+            new Variant(Optimizer.MOMENTUM, 0.01, LearningRateSchedule.CONSTANT),
+            new Variant(Optimizer.NESTEROV, 0.01, LearningRateSchedule.CONSTANT),
+            new Variant(Optimizer.NESTEROV, 0.03, LearningRateSchedule.WARMUP_COSINE),
+            new Variant(Optimizer.ADAM, 0.001, LearningRateSchedule.CONSTANT),
+            new Variant(Optimizer.ADAM, 0.003, LearningRateSchedule.WARMUP_COSINE),
+            new Variant(Optimizer.ADAM, 0.001, LearningRateSchedule.CONSTANT, Activation.FAST_SIGMOID,
+                    Activation.SIGMOID),
+            new Variant(Optimizer.ADAM, 0.001, LearningRateSchedule.CONSTANT, Activation.SIGMOID,
+                    Activation.SOFTMAX),
+            new Variant(Optimizer.ADAM, 0.001, LearningRateSchedule.CONSTANT, Activation.LEAKY_RELU,
+                    Activation.SOFTMAX) };
+
+    // Utility class, not meant to be instantiated
+    private ConvergenceBenchmark() {
+    }
+
+    /**
+     * Trains every variant on both folds and prints, for every fold, the epochs
+     * and training time needed to reach the accuracy of plain gradient descent,
+     * then the best and the final accuracy.
+     *
+     * @param args the number of epochs, 200 by default, and the training mode,
+     *             the mode of the application by default
+     * @throws FileNotFoundException if a bundled dataset cannot be read
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : MultiLayerPerceptron.TRAINING_EPOCHS_VALUE;
+        TrainingMode mode = args.length > 1 ? TrainingMode.valueOf(args[1].toUpperCase(Locale.ROOT))
+                : MultiLayerPerceptron.TRAINING_MODE;
+        DataSet first = MultiLayerPerceptron.createSet(BenchmarkData.rows(BenchmarkData.BUNDLED));
+        DataSet second = MultiLayerPerceptron.createSet(BenchmarkData.queries(BenchmarkData.BUNDLED));
+        DataSet[][] folds = { { first, second }, { second, first } };
+
+        System.out.printf("%d epochs of %d batches of %d samples, %s training%n", epochs,
+                MultiLayerPerceptron.TRAINING_LOOPS_VALUE, MultiLayerPerceptron.TRAINING_BATCH_SIZE, mode);
+        System.out.printf("%-40s %5s %16s %16s %9s %9s%n", "Variant", "Fold", "Epochs to target", "Time to target",
+                "Best", "Final");
+        double[] targets = null;
+        for (Variant variant : VARIANTS) {
+            // Hogwild only trains with plain gradient descent
+            if (mode == TrainingMode.HOGWILD && variant.optimizer != Optimizer.SGD) {
+                continue;
+            }
+            double[][] curves = new double[folds.length][];
+            long[][] times = new long[folds.length][];
+            for (int fold = 0; fold < folds.length; fold++) {
+                curves[fold] = new double[epochs];
+                times[fold] = new long[epochs];
+                train(variant, folds[fold][0], folds[fold][1], mode, curves[fold], times[fold]);
+            }
+            if (targets == null) {
+                targets = new double[folds.length];
+                for (int fold = 0; fold < folds.length; fold++) {
+                    targets[fold] = curves[fold][epochs - 1];
+                }
+            }
+            for (int fold = 0; fold < folds.length; fold++) {
+                print(fold == 0 ? variant.name() : "", fold, curves[fold], times[fold], targets[fold]);
+            }
+        }
+    }
+
+    /**
+     * Trains a network one epoch at a time, scoring it on the testing set after
+     * every epoch.
+     *
+     * @param variant     the optimizer, learning rate and schedule
+     * @param trainingSet the training set
+     * @param testingSet  the testing set
+     * @param mode        the training mode
+     * @param accuracies  the testing accuracy after every epoch
+     * @param nanos       the training time up to every epoch, without scoring the testing set
+     */
+    private static void train(Variant variant, DataSet trainingSet, DataSet testingSet, TrainingMode mode,
+            double[] accuracies, long[] nanos) {
+        NetworkBase network = MultiLayerPerceptron.createNetwork();
+        network.setVerbose(false);
+        for (int layer = 1; layer < network.NETWORK_SIZE - 1; layer++) {
+            network.setActivation(layer, variant.hiddenActivation);
+        }
+        network.setActivation(network.NETWORK_SIZE - 1, variant.outputActivation);
+        network.setOptimizer(variant.optimizer);
+        network.setLearningRate(variant.learningRate);
+        network.setLearningRateSchedule(variant.schedule, accuracies.length);
+        long elapsed = 0;
+        for (int epoch = 0; epoch < accuracies.length; epoch++) {
+            long start = System.nanoTime();
+            network.train(trainingSet, 1, MultiLayerPerceptron.TRAINING_LOOPS_VALUE,
+                    MultiLayerPerceptron.TRAINING_BATCH_SIZE, mode);
+            elapsed += System.nanoTime() - start;
+            nanos[epoch] = elapsed;
+            accuracies[epoch] = network.evaluate(testingSet);
+        }
+    }
+
+    /**
+     * Prints the convergence of one fold.
+     *
+     * @param name       the name of the variant, or an empty string
+     * @param fold       the fold
+     * @param accuracies the testing accuracy after every epoch
+     * @param nanos      the training time up to every epoch
+     * @param target     the accuracy to reach
+     */
+    private static void print(String name, int fold, double[] accuracies, long[] nanos, double target) {
+        int reached = -1;
+        double best = 0;
+        for (int epoch = 0; epoch < accuracies.length; epoch++) {
+            if (reached < 0 && accuracies[epoch] >= target) {
+                reached = epoch;
+            }
+            best = Math.max(best, accuracies[epoch]);
+        }
+        String epochs = reached < 0 ? "-" : Integer.toString(reached + 1);
+        String time = reached < 0 ? "-" : String.format("%.2f s", nanos[reached] / 1e9);
+        System.out.printf("%-40s %5d %16s %16s %9.5f %9.5f%n", name, fold + 1, epochs, time, best,
+                accuracies[accuracies.length - 1]);
+    }
+}
@@ -0,0 +1,71 @@
+package digit_recognition;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of drawing training batches from a dataset, for several dataset
+ * and batch sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSetBenchmark {
+
+    // The bundled training set, or a number of synthetic rows
+    @Param({ BenchmarkData.BUNDLED, "100000" })
+    public String dataset;
+
+    @Param({ "33", "256" })
+    public int batchSize;
+
+    private DataSet set;
+    private BatchSampler sampler;
+    private BatchSampler stratifiedSampler;
+
+    /**
+     * Builds the dataset the way the application does.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        set = MultiLayerPerceptron.createSet(BenchmarkData.rows(dataset));
+        sampler = new BatchSampler(set, Sampling.UNIFORM, new SplittableRandom(MultiLayerPerceptron.RANDOM_SEED));
+        stratifiedSampler = new BatchSampler(set, Sampling.STRATIFIED,
+                new SplittableRandom(MultiLayerPerceptron.RANDOM_SEED));
+    }
+
+    /**
+     * Batch drawn from the epoch permutation used for training.
+     *
+     * @return the batch
+     */
+    @Benchmark
+    public DataSet samplerBatch() {
+        return sampler.nextBatch(batchSize);
+    }
+
+    /**
+     * Batch drawn with every label in proportion to its share of the dataset.
+     *
+     * @return the batch
+     */
+    @Benchmark
+    public DataSet stratifiedBatch() {
+        return stratifiedSampler.nextBatch(batchSize);
+    }
+}
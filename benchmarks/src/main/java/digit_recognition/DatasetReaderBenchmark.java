@@ -0,0 +1,53 @@
+package digit_recognition;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of reading a CSV dataset into memory, for several file sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatasetReaderBenchmark {
+
+    // The bundled training file, or a number of synthetic rows written to a temporary file
+    @Param({ BenchmarkData.BUNDLED, "100000" })
+    public String dataset;
+
+    private String file;
+
+    /**
+     * Finds or writes the file to read.
+     */
+    @Setup
+    public void setUp() {
+        file = BenchmarkData.csvFile(dataset);
+    }
+
+    /**
+     * Reads and parses the whole file.
+     *
+     * @return the rows of the file
+     * @throws FileNotFoundException if the file is not found
+     */
+    @Benchmark
+    public int[][] readDataset() throws FileNotFoundException {
+        return DatasetReader.readDataset(file);
+    }
+}
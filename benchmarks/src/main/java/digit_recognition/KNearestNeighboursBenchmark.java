@@ -0,0 +1,81 @@
+package digit_recognition;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the k-nearest neighbours classification and of the distance
+ * it is built on, for several training set sizes and values of k.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KNearestNeighboursBenchmark {
+
+    // The bundled training set, or a number of synthetic training rows
+    @Param({ BenchmarkData.BUNDLED, "20000", "100000" })
+    public String dataset;
+
+    @Param({ "1", "3", "9" })
+    public int k;
+
+    private double[][] trainingFeatures;
+    private int[] trainingLabels;
+    private int[] order;
+    private double[][] queries;
+    private int next;
+
+    /**
+     * Loads the training set and the held out queries.
+     */
+    @Setup
+    public void setUp() {
+        int[][] rows = BenchmarkData.rows(dataset);
+        trainingFeatures = BenchmarkData.features(rows);
+        trainingLabels = BenchmarkData.labels(rows);
+        order = Utility.orderDimensionsByVariance(trainingFeatures);
+        queries = BenchmarkData.features(BenchmarkData.queries(dataset));
+    }
+
+    /**
+     * Classification of one query against the whole training set.
+     *
+     * @return the predicted label
+     */
+    @Benchmark
+    public int classify() {
+        return KNearestNeighbours.classifyUsingKNearestNeighbours(trainingFeatures, trainingLabels,
+                queries[nextQuery()], k, KNearestNeighbours.DISTANCE_METRIC, order);
+    }
+
+    /**
+     * Euclidean distance between a query and a training point.
+     *
+     * @return the distance
+     */
+    @Benchmark
+    public double euclideanDistance() {
+        int query = nextQuery();
+        return Utility.calculateEuclideanDistance(queries[query], trainingFeatures[query % trainingFeatures.length]);
+    }
+
+    // Cycles through the queries
+    private int nextQuery() {
+        next = next + 1 == queries.length ? 0 : next + 1;
+        return next;
+    }
+}
@@ -0,0 +1,130 @@
+package digit_recognition;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the per-sample passes of the network, for several widths of
+ * the hidden layers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark {
+
+    // Widths of the hidden layers separated by x, the first being the layers of the application
+    @Param({ "31x10", "128x64", "512x256" })
+    public String hiddenLayers;
+
+    @Param({ "DOUBLE", "FLOAT" })
+    public Precision precision;
+
+    // Activation of the hidden layers, the output layer keeps the sigmoid
+    @Param({ "SIGMOID", "FAST_SIGMOID", "LEAKY_RELU" })
+    public Activation activation;
+
+    @Param({ BenchmarkData.BUNDLED })
+    public String dataset;
+
+    private NetworkBase network;
+    private InferenceModel model;
+    private InferenceModel.Scratch scratch;
+    private double[][] inputs;
+    private int[] labels;
+    private int next;
+
+    /**
+     * Creates the network and runs one forward pass, so that the backward pass
+     * has activations to start from.
+     */
+    @Setup
+    public void setUp() {
+        String[] widths = hiddenLayers.split("x");
+        int[] layerSizes = new int[widths.length + 2];
+        layerSizes[0] = MultiLayerPerceptron.INPUT_LAYER_NODE_AMOUNT;
+        for (int layer = 0; layer < widths.length; layer++) {
+            layerSizes[layer + 1] = Integer.parseInt(widths[layer].trim());
+        }
+        layerSizes[layerSizes.length - 1] = 10;
+        network = new NetworkBase(layerSizes, precision, MultiLayerPerceptron.RANDOM_SEED);
+        for (int layer = 1; layer < layerSizes.length - 1; layer++) {
+            network.setActivation(layer, activation);
+        }
+        model = network.snapshot();
+        scratch = model.newScratch();
+
+        int[][] rows = BenchmarkData.rows(dataset);
+        inputs = BenchmarkData.features(rows);
+        labels = BenchmarkData.labels(rows);
+        network.forward(inputs[0]);
+    }
+
+    /**
+     * Forward pass of the training path, computing the derivatives too.
+     *
+     * @return the output of the network
+     */
+    @Benchmark
+    public double[] forward() {
+        return network.forward(inputs[nextSample()]);
+    }
+
+    /**
+     * Backward pass from the activations of the last forward pass.
+     */
+    @Benchmark
+    public void backward() {
+        network.backward(labels[next]);
+    }
+
+    /**
+     * Weight update from the error signals of the last backward pass. A learning
+     * rate of zero does all the work without changing the weights, so every
+     * invocation measures the same network.
+     */
+    @Benchmark
+    public void updateWeights() {
+        network.updateWeights(0.0);
+    }
+
+    /**
+     * One stochastic training step: forward pass, backward pass and update.
+     */
+    @Benchmark
+    public void trainStep() {
+        int sample = nextSample();
+        network.forward(inputs[sample]);
+        network.backward(labels[sample]);
+        network.updateWeights(MultiLayerPerceptron.LEARNING_RATE);
+    }
+
+    /**
+     * Classification through the inference snapshot, without derivatives.
+     *
+     * @return the predicted label
+     */
+    @Benchmark
+    public int classify() {
+        return model.classify(inputs[nextSample()], scratch);
+    }
+
+    // Cycles through the samples so the branch predictor cannot learn a single input
+    private int nextSample() {
+        next = next + 1 == inputs.length ? 0 : next + 1;
+        return next;
+    }
+}
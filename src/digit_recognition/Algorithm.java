@@ -0,0 +1,11 @@
+package digit_recognition;
+
+/**
+ * Enum representing the classifiers the application can evaluate.
+ */
+public enum Algorithm {
+    // Majority label of the nearest training features
+    K_NEAREST_NEIGHBOURS,
+    // Network trained on the training features
+    MULTI_LAYER_PERCEPTRON
+}
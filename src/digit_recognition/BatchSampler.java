@@ -0,0 +1,142 @@
+package digit_recognition;
+
+import java.util.SplittableRandom;
+
+/**
+ * Class drawing batches from a dataset without replacement.
+ *
+ * The data points are visited in a random permutation that is shuffled again
+ * with the Fisher-Yates algorithm once every point has been drawn, so every
+ * point is used once per epoch. Batches are views over the permutation and do
+ * not copy any data point. A sampler is not thread-safe; every thread draws
+ * from its own sampler with its own random source.
+ */
+public class BatchSampler {
+    private final DataSet set;
+    private final Sampling sampling;
+    private final SplittableRandom random;
+
+    // Permutation of every data point and the position of the next batch in it
+    private int[] order;
+    private int position;
+
+    // Permutation of the data points of every label, for stratified sampling
+    private int[][] labelOrders;
+    private int[] labelPositions;
+    private int[] batchIndices;
+
+    /**
+     * Constructor for the BatchSampler class.
+     *
+     * @param set      the dataset to draw from
+     * @param sampling the way batches are drawn
+     * @param random   the random source of this sampler
+     */
+    public BatchSampler(DataSet set, Sampling sampling, SplittableRandom random) {
+        this.set = set;
+        this.sampling = sampling;
+        this.random = random;
+        if (sampling == Sampling.STRATIFIED) {
+            groupByLabel();
+        } else {
+            order = new int[set.size()];
+            for (int index = 0; index < order.length; index++) {
+                order[index] = index;
+            }
+            Utility.shuffle(order, order.length, random);
+        }
+    }
+
+    /**
+     * Draws the next batch. The batch reads the buffers of the sampler, so it is
+     * only valid until the next batch is drawn.
+     *
+     * @param size the size of the batch, capped by the size of the dataset
+     * @return a view over the data points of the batch
+     */
+    public DataSet nextBatch(int size) {
+        size = Math.max(0, Math.min(size, set.size()));
+        if (sampling == Sampling.STRATIFIED) {
+            return nextStratifiedBatch(size);
+        }
+        // Start a new epoch when the rest of the permutation cannot fill the batch
+        if (position + size > order.length) {
+            Utility.shuffle(order, order.length, random);
+            position = 0;
+        }
+        DataSet batch = set.view(order, position, position + size);
+        position += size;
+        return batch;
+    }
+
+    /**
+     * Draws a batch holding every label in proportion to its share of the
+     * dataset. The counts that do not divide exactly go to the labels with the
+     * largest remainders, and the batch is shuffled so that the labels are mixed.
+     *
+     * @param size the size of the batch
+     * @return a view over the data points of the batch
+     */
+    private DataSet nextStratifiedBatch(int size) {
+        int labels = labelOrders.length;
+        int[] counts = new int[labels];
+        long[] remainders = new long[labels];
+        int assigned = 0;
+        for (int label = 0; label < labels; label++) {
+            long share = (long) size * labelOrders[label].length;
+            counts[label] = (int) (share / set.size());
+            remainders[label] = share % set.size();
+            assigned += counts[label];
+        }
+        // Hand out the leftover places by largest remainder, the lowest label first on ties
+        for (; assigned < size; assigned++) {
+            int best = -1;
+            for (int label = 0; label < labels; label++) {
+                if (best < 0 || remainders[label] > remainders[best]) {
+                    best = label;
+                }
+            }
+            counts[best]++;
+            remainders[best] = -1;
+        }
+
+        int filled = 0;
+        for (int label = 0; label < labels; label++) {
+            int[] labelOrder = labelOrders[label];
+            for (int count = 0; count < counts[label]; count++) {
+                // Start a new epoch of this label once all its points have been drawn
+                if (labelPositions[label] == labelOrder.length) {
+                    Utility.shuffle(labelOrder, labelOrder.length, random);
+                    labelPositions[label] = 0;
+                }
+                batchIndices[filled++] = labelOrder[labelPositions[label]++];
+            }
+        }
+        Utility.shuffle(batchIndices, size, random);
+        return set.view(batchIndices, 0, size);
+    }
+
+    /**
+     * Splits the data points by label, each label in its own permutation.
+     */
+    private void groupByLabel() {
+        int[] counts = new int[set.getOutputSize()];
+        for (int index = 0; index < set.size(); index++) {
+            counts[set.getLabel(index)]++;
+        }
+        labelOrders = new int[counts.length][];
+        for (int label = 0; label < counts.length; label++) {
+            labelOrders[label] = new int[counts[label]];
+        }
+        int[] filled = new int[counts.length];
+        for (int index = 0; index < set.size(); index++) {
+            int label = set.getLabel(index);
+            labelOrders[label][filled[label]++] = index;
+        }
+        for (int[] labelOrder : labelOrders) {
+            Utility.shuffle(labelOrder, labelOrder.length, random);
+        }
+        labelPositions = new int[counts.length];
+        batchIndices = new int[set.size()];
+    }
+}
@@ -0,0 +1,262 @@
+package digit_recognition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class representing a dataset stored in the binary format. Opening a file
+ * only maps it into memory, so it takes the same time and heap whatever the
+ * size of the dataset, and the values are read straight from the mapping.
+ *
+ * The file starts with a 32 byte little-endian header followed by the rows,
+ * packed one after the other:
+ *
+ * <pre>
+ * int  magic         "DGTB"
+ * int  version       1
+ * long rows          number of rows
+ * int  columns       values per row, the features and the label
+ * int  labelColumn   column holding the label
+ * byte valueType     1 for unsigned bytes, 4 for 32-bit integers
+ * </pre>
+ */
+public class BinaryDataset {
+    // Constants for the format
+    public static final int MAGIC = 0x42544744;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final byte UNSIGNED_BYTE = 1;
+    private static final byte INTEGER = 4;
+    // Largest part of the file held by a single mapping
+    private static final long MAX_SEGMENT_SIZE = 1 << 30;
+
+    private final int rows;
+    private final int columns;
+    private final int labelColumn;
+    private final int valueSize;
+    private final int rowsPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Constructor for the BinaryDataset class.
+     *
+     * @param rows           the number of rows
+     * @param columns        the number of values per row
+     * @param labelColumn    the column holding the label
+     * @param valueSize      the size of a value in bytes
+     * @param rowsPerSegment the number of rows in every mapped segment
+     * @param segments       the mapped segments
+     */
+    private BinaryDataset(int rows, int columns, int labelColumn, int valueSize, int rowsPerSegment,
+            MappedByteBuffer[] segments) {
+        this.rows = rows;
+        this.columns = columns;
+        this.labelColumn = labelColumn;
+        this.valueSize = valueSize;
+        this.rowsPerSegment = rowsPerSegment;
+        this.segments = segments;
+    }
+
+    /**
+     * Opens a dataset stored in the binary format.
+     *
+     * @param filePath path to the binary file
+     * @return the mapped dataset
+     * @throws IOException if the file cannot be read or is not a binary dataset
+     */
+    public static BinaryDataset open(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            // Read and check the header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(filePath + " is not a binary dataset");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary dataset version " + version + " in " + filePath);
+            }
+            long rowCount = header.getLong();
+            int columns = header.getInt();
+            int labelColumn = header.getInt();
+            byte valueType = header.get();
+            if (rowCount < 0 || rowCount > Integer.MAX_VALUE || columns < 1 || labelColumn < 0
+                    || labelColumn >= columns || (valueType != UNSIGNED_BYTE && valueType != INTEGER)) {
+                throw new IOException("Corrupted header in " + filePath);
+            }
+            // A row must fit in a segment, and a corrupted header must not overflow the size of the rows
+            long rowSize = (long) columns * valueType;
+            long fileSize;
+            try {
+                fileSize = Math.addExact(HEADER_SIZE, Math.multiplyExact(rowCount, rowSize));
+            } catch (ArithmeticException e) {
+                throw new IOException("Corrupted header in " + filePath, e);
+            }
+            if (rowSize > MAX_SEGMENT_SIZE) {
+                throw new IOException("Corrupted header in " + filePath);
+            }
+            if (channel.size() < fileSize) {
+                throw new IOException(filePath + " is shorter than its header states");
+            }
+
+            // Map the rows in segments that each hold a whole number of rows
+            int rowsPerSegment = (int) Math.max(1, MAX_SEGMENT_SIZE / rowSize);
+            int segmentCount = (int) ((rowCount + rowsPerSegment - 1) / rowsPerSegment);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int segment = 0; segment < segmentCount; segment++) {
+                long firstRow = (long) segment * rowsPerSegment;
+                long segmentRows = Math.min(rowsPerSegment, rowCount - firstRow);
+                segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstRow * rowSize,
+                        segmentRows * rowSize);
+                segments[segment].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new BinaryDataset((int) rowCount, columns, labelColumn, valueType, rowsPerSegment, segments);
+        }
+    }
+
+    /**
+     * Writes a dataset in the binary format. Values are stored as unsigned bytes
+     * when they all fit and as 32-bit integers otherwise.
+     *
+     * @param dataset     the dataset with one row per data point
+     * @param labelColumn the column holding the label
+     * @param filePath    path to the binary file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(int[][] dataset, int labelColumn, String filePath) throws IOException {
+        int columns = dataset.length == 0 ? labelColumn + 1 : dataset[0].length;
+        byte valueType = UNSIGNED_BYTE;
+        for (int[] row : dataset) {
+            if (row.length != columns) {
+                throw new IllegalArgumentException("Every row must have " + columns + " values");
+            }
+            for (int value : row) {
+                if (value < 0 || value > 255) {
+                    valueType = INTEGER;
+                }
+            }
+        }
+
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // The buffer holds at least one row, however wide
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(1 << 16, Math.multiplyExact(columns, (int) valueType)))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(dataset.length).putInt(columns).putInt(labelColumn)
+                    .put(valueType);
+            buffer.position(HEADER_SIZE);
+            for (int[] row : dataset) {
+                // Flush the buffer when the next row does not fit
+                if (buffer.remaining() < columns * valueType) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                for (int value : row) {
+                    if (valueType == UNSIGNED_BYTE) {
+                        buffer.put((byte) value);
+                    } else {
+                        buffer.putInt(value);
+                    }
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Gets a value of the dataset.
+     *
+     * @param row    the row of the value
+     * @param column the column of the value
+     * @return the value
+     */
+    public int getValue(int row, int column) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException("Invalid position: " + row + ", " + column);
+        }
+        MappedByteBuffer segment = segments[row / rowsPerSegment];
+        int position = ((row % rowsPerSegment) * columns + column) * valueSize;
+        return valueSize == UNSIGNED_BYTE ? segment.get(position) & 0xFF : segment.getInt(position);
+    }
+
+    /**
+     * Gets the label of a row.
+     *
+     * @param row the row
+     * @return the label
+     */
+    public int getLabel(int row) {
+        return getValue(row, labelColumn);
+    }
+
+    /**
+     * Copies a row of the dataset into an array.
+     *
+     * @param row    the row
+     * @param target the array receiving the values, at least as long as a row
+     * @return the target array
+     */
+    public int[] getRow(int row, int[] target) {
+        for (int column = 0; column < columns; column++) {
+            target[column] = getValue(row, column);
+        }
+        return target;
+    }
+
+    /**
+     * Copies the whole dataset to the heap, one array per row. The copy takes
+     * as much heap as a parsed CSV file, only the parsing is saved.
+     *
+     * @return 2D array with the dataset
+     */
+    public int[][] toRows() {
+        int[][] dataset = new int[rows][];
+        for (int row = 0; row < rows; row++) {
+            dataset[row] = getRow(row, new int[columns]);
+        }
+        return dataset;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of values per row.
+     *
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return columns;
+    }
+
+    /**
+     * Gets the column holding the label.
+     *
+     * @return the label column
+     */
+    public int getLabelColumn() {
+        return labelColumn;
+    }
+}
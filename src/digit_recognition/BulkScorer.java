@@ -0,0 +1,272 @@
+package digit_recognition;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Class scoring files of unlabelled rows without any interaction. The rows
+ * are read in chunks, the chunks are classified in parallel and their
+ * predictions are written in the order of the input, one line per row with
+ * the predicted digit, optionally followed by the ten outputs of the network.
+ *
+ * Only a fixed number of chunks is held in memory at any time, so the memory
+ * stays the same whatever the size of the input.
+ */
+public class BulkScorer {
+    // Constants for the scoring
+    static final int CHUNK_ROWS = 4096;
+    static final int SCORING_THREADS = Runtime.getRuntime().availableProcessors();
+    // Chunks read ahead of the writer, which bounds the memory in use
+    static final int CHUNKS_IN_FLIGHT = 2 * SCORING_THREADS;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int FEATURES = DatasetReader.SINGLE_INPUT_SIZE - 1;
+    private static final int SCORE_DECIMALS = 6;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    // Classifier of a chunk of rows, called from several threads at once
+    interface ChunkClassifier {
+        void classify(double[][] rows, int count, int[] labels, double[][] scores);
+    }
+
+    /**
+     * Scores a file with the chosen classifier.
+     *
+     * @param args the classifier (mlp or knn), the model file of the network or
+     *             the training dataset of the k-nearest neighbours, the input
+     *             file, the output file and optionally --scores
+     */
+    public static void main(String[] args) {
+        boolean withScores = args.length == 5 && args[4].equals("--scores");
+        if ((args.length != 4 && !withScores) || !(args[0].equals("mlp") || args[0].equals("knn"))) {
+            System.out.println("Usage: java digit_recognition.BulkScorer <mlp|knn> <modelFile|trainingDataset> "
+                    + "<input> <output> [--scores]");
+            return;
+        }
+        if (withScores && args[0].equals("knn")) {
+            System.out.println("Class scores are only available for the network.");
+            return;
+        }
+        try {
+            ChunkClassifier classifier = args[0].equals("mlp")
+                    ? networkClassifier(NetworkBase.load(args[1]).snapshot())
+                    : neighboursClassifier(KNearestNeighbours.createClassifier(DatasetReader.readDataset(args[1])));
+            long startTime = System.nanoTime();
+            long rows;
+            try (RowReader reader = DatasetReader.openRows(args[2], FEATURES);
+                    OutputStream output = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[3])),
+                            OUTPUT_BUFFER_SIZE)) {
+                rows = score(reader, output, classifier, withScores);
+            }
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.printf("Scored %d rows in %.2f s (%.0f rows/s) to %s%n", rows, seconds, rows / seconds,
+                    args[3]);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage() + ". Please provide a valid path.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid input: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error when scoring: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Scores every row of a reader and writes the predictions in the order of
+     * the rows. Progress is printed about once a second.
+     *
+     * @param reader     the reader of the rows, each holding 64 features
+     * @param output     the stream receiving the predictions
+     * @param classifier the classifier
+     * @param withScores whether to write the outputs of the classifier after
+     *                   every prediction
+     * @return the number of rows scored
+     * @throws IOException if the rows cannot be read or the predictions written
+     */
+    static long score(RowReader reader, OutputStream output, ChunkClassifier classifier, boolean withScores)
+            throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(SCORING_THREADS);
+        ArrayDeque<Future<ScoredChunk>> pending = new ArrayDeque<>();
+        Progress progress = new Progress();
+        int[] row = new int[FEATURES];
+        try {
+            boolean more = true;
+            while (more) {
+                // Reads the next chunk on this thread, so the rows are taken in order
+                double[][] rows = new double[CHUNK_ROWS][];
+                int count = 0;
+                while (count < CHUNK_ROWS && (more = reader.readRow(row))) {
+                    double[] features = new double[FEATURES];
+                    for (int feature = 0; feature < FEATURES; feature++) {
+                        features[feature] = row[feature];
+                    }
+                    rows[count++] = features;
+                }
+                if (count > 0) {
+                    int chunkRows = count;
+                    pending.add(executor.submit(() -> scoreChunk(classifier, rows, chunkRows, withScores)));
+                    progress.read += chunkRows;
+                }
+                // Writes the oldest chunk once enough are in flight, waiting for it if needed
+                while (pending.size() >= CHUNKS_IN_FLIGHT || (!more && !pending.isEmpty())) {
+                    ScoredChunk chunk = await(pending.poll());
+                    output.write(chunk.lines);
+                    progress.report(chunk.rows);
+                }
+            }
+            output.flush();
+            return progress.read;
+        } finally {
+            for (Future<ScoredChunk> chunk : pending) {
+                chunk.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a chunk classifier over a snapshot of a network. Chunks without
+     * scores go through the network as one batch.
+     *
+     * @param model the snapshot of the network
+     * @return the chunk classifier
+     */
+    static ChunkClassifier networkClassifier(InferenceModel model) {
+        if (model.getInputSize() != FEATURES) {
+            throw new IllegalArgumentException("The network must take " + FEATURES + " inputs");
+        }
+        return (rows, count, labels, scores) -> {
+            if (scores == null) {
+                model.classify(rows, count, labels);
+                return;
+            }
+            InferenceModel.Scratch scratch = model.newScratch();
+            for (int index = 0; index < count; index++) {
+                double[] output = model.forward(rows[index], scratch);
+                labels[index] = Utility.returnIndexOfHighestValue(output);
+                scores[index] = output.clone();
+            }
+        };
+    }
+
+    /**
+     * Creates a chunk classifier over the k-nearest neighbours, which gives no
+     * scores.
+     *
+     * @param neighbours the classifier of a single row
+     * @return the chunk classifier
+     */
+    static ChunkClassifier neighboursClassifier(ToIntFunction<double[]> neighbours) {
+        return (rows, count, labels, scores) -> {
+            for (int index = 0; index < count; index++) {
+                labels[index] = neighbours.applyAsInt(rows[index]);
+            }
+        };
+    }
+
+    /**
+     * Classifies a chunk and formats its predictions.
+     *
+     * @param classifier the classifier
+     * @param rows       the rows of the chunk
+     * @param count      the number of rows
+     * @param withScores whether to write the outputs of the classifier
+     * @return the scored chunk
+     */
+    private static ScoredChunk scoreChunk(ChunkClassifier classifier, double[][] rows, int count, boolean withScores) {
+        int[] labels = new int[count];
+        double[][] scores = withScores ? new double[count][] : null;
+        classifier.classify(rows, count, labels, scores);
+        StringBuilder lines = new StringBuilder(count * (withScores ? 100 : 2));
+        for (int index = 0; index < count; index++) {
+            lines.append(labels[index]);
+            if (withScores) {
+                for (double score : scores[index]) {
+                    appendScore(lines.append(','), score);
+                }
+            }
+            lines.append('\n');
+        }
+        return new ScoredChunk(count, lines.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Appends a score with a fixed number of decimals, which is much faster
+     * than formatting it with a pattern.
+     *
+     * @param lines the text receiving the score
+     * @param score the score
+     */
+    private static void appendScore(StringBuilder lines, double score) {
+        long scaled = Math.round(Math.abs(score) * 1e6);
+        if (score < 0 && scaled != 0) {
+            lines.append('-');
+        }
+        lines.append(scaled / 1_000_000).append('.');
+        String decimals = Long.toString(scaled % 1_000_000);
+        for (int padding = decimals.length(); padding < SCORE_DECIMALS; padding++) {
+            lines.append('0');
+        }
+        lines.append(decimals);
+    }
+
+    /**
+     * Waits for a chunk to be scored.
+     *
+     * @param chunk the scoring of the chunk
+     * @return the scored chunk
+     * @throws IOException if the thread is interrupted
+     */
+    private static ScoredChunk await(Future<ScoredChunk> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scoring was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Scoring failed", e.getCause());
+        }
+    }
+
+    // Predictions of a chunk, one line per row
+    private static class ScoredChunk {
+        final int rows;
+        final byte[] lines;
+
+        ScoredChunk(int rows, byte[] lines) {
+            this.rows = rows;
+            this.lines = lines;
+        }
+    }
+
+    // Rows read and written so far, printed about once a second
+    private static class Progress {
+        private final long startTime = System.nanoTime();
+        private long lastReport = startTime;
+        private long read;
+        private long written;
+
+        // Counts the rows of a written chunk and prints the progress if it is time to
+        void report(int rows) {
+            written += rows;
+            long now = System.nanoTime();
+            if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                System.out.printf("Scored %d rows (%.0f rows/s)%n", written, written / ((now - startTime) / 1e9));
+            }
+        }
+    }
+}
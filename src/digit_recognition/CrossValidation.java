@@ -0,0 +1,644 @@
+package digit_recognition;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+/**
+ * Class running k-fold cross-validation. Every fold is tested on its own rows
+ * after training on the rows of all the other folds.
+ *
+ * The rows are parsed once and every fold reads them through views, so the
+ * folds share a single copy of the data however many there are. The folds are
+ * trained and evaluated at the same time on a bounded pool of threads.
+ */
+public class CrossValidation {
+    // Constants for the cross-validation
+    static final int FOLD_THREADS = Runtime.getRuntime().availableProcessors();
+    // The parallel modes would start a pool per fold, so they train on one thread instead
+    static final TrainingMode FOLD_TRAINING_MODE = MultiLayerPerceptron.TRAINING_MODE == TrainingMode.PARALLEL
+            || MultiLayerPerceptron.TRAINING_MODE == TrainingMode.HOGWILD ? TrainingMode.MINI_BATCH
+                    : MultiLayerPerceptron.TRAINING_MODE;
+    private static final int FEATURES = DatasetReader.SINGLE_INPUT_SIZE - 1;
+    private static final int LABEL_COUNT = 10;
+
+    // Trains on the training rows of a fold with the threads it may use and returns its accuracies
+    interface FoldEvaluator {
+        double[] evaluate(Fold fold, int threads);
+    }
+
+    private final int[][] rows;
+    private final int[] labels;
+    private final Fold[] folds;
+
+    // Copies of the rows shared by every fold, built the first time a fold needs them
+    private DataSet set;
+    private double[][] features;
+
+    /**
+     * Constructor splitting the rows into folds at random. The rows of every
+     * digit are dealt out in turn, so each fold holds about the same share of
+     * every digit.
+     *
+     * @param rows  the rows, with the label last in every row
+     * @param folds the number of folds, at least two
+     * @param seed  the seed of the split, so that runs can be repeated
+     */
+    public CrossValidation(int[][] rows, int folds, long seed) {
+        if (folds < 2 || folds > rows.length) {
+            throw new IllegalArgumentException("The number of folds must be between 2 and " + rows.length);
+        }
+        this.rows = rows;
+        this.labels = extractLabels(rows);
+        this.folds = createFolds(assignFolds(labels, folds, seed), folds);
+    }
+
+    /**
+     * Constructor using every dataset as one fold, so that two datasets give the
+     * two-fold test of the application.
+     *
+     * @param datasets the datasets, at least two
+     */
+    public CrossValidation(int[][]... datasets) {
+        if (datasets.length < 2) {
+            throw new IllegalArgumentException("Cross-validation needs at least two datasets");
+        }
+        int total = 0;
+        for (int[][] dataset : datasets) {
+            if (dataset.length == 0) {
+                throw new IllegalArgumentException("Datasets cannot be empty");
+            }
+            total += dataset.length;
+        }
+        // Only the references to the rows are gathered, the rows themselves are not copied
+        this.rows = new int[total][];
+        int[] foldOfRow = new int[total];
+        int next = 0;
+        for (int fold = 0; fold < datasets.length; fold++) {
+            for (int[] row : datasets[fold]) {
+                foldOfRow[next] = fold;
+                rows[next++] = row;
+            }
+        }
+        this.labels = extractLabels(rows);
+        this.folds = createFolds(foldOfRow, datasets.length);
+    }
+
+    /**
+     * Runs the cross-validation with the chosen classifier, with one fold per
+     * processor at a time.
+     *
+     * @param algorithm the classifier
+     * @return the results of the folds
+     */
+    public Result run(Algorithm algorithm) {
+        return run(algorithm, FOLD_THREADS);
+    }
+
+    /**
+     * Runs the cross-validation with the chosen classifier.
+     *
+     * @param algorithm the classifier
+     * @param threads   the number of threads, which is also the most folds run
+     *                  at the same time
+     * @return the results of the folds
+     */
+    public Result run(Algorithm algorithm, int threads) {
+        return run(algorithm == Algorithm.K_NEAREST_NEIGHBOURS ? CrossValidation::evaluateNeighbours
+                : CrossValidation::evaluateNetwork, threads);
+    }
+
+    /**
+     * Runs the cross-validation, trying the folds at the same time on a pool of
+     * threads. When there are fewer folds than threads, the threads left over
+     * are shared out between the folds.
+     *
+     * @param evaluator the training and evaluation of a fold, called from
+     *                  several threads at once
+     * @param threads   the number of threads, which is also the most folds run
+     *                  at the same time
+     * @return the results of the folds, in the order of the folds
+     */
+    Result run(FoldEvaluator evaluator, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        int concurrentFolds = Math.min(threads, folds.length);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrentFolds);
+        long startTime = System.nanoTime();
+        try {
+            return collect(submit(evaluator, executor, Math.max(1, threads / concurrentFolds)), startTime);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits the training and evaluation of every fold to an executor, which
+     * can be shared with other cross-validations.
+     *
+     * @param evaluator      the training and evaluation of a fold, called from
+     *                       several threads at once
+     * @param executor       the executor running the folds
+     * @param threadsPerFold the number of threads each fold may use
+     * @return the pending results of the folds, in the order of the folds
+     */
+    List<Future<FoldResult>> submit(FoldEvaluator evaluator, ExecutorService executor, int threadsPerFold) {
+        List<Future<FoldResult>> pending = new ArrayList<>();
+        for (Fold fold : folds) {
+            pending.add(executor.submit(() -> runFold(evaluator, fold, threadsPerFold)));
+        }
+        return pending;
+    }
+
+    /**
+     * Waits for the folds of a cross-validation.
+     *
+     * @param pending   the pending results of the folds
+     * @param startTime the time the folds were submitted, in nanoseconds
+     * @return the results of the folds
+     */
+    static Result collect(List<Future<FoldResult>> pending, long startTime) {
+        try {
+            List<FoldResult> results = new ArrayList<>();
+            for (Future<FoldResult> result : pending) {
+                results.add(result.get());
+            }
+            return new Result(results, System.nanoTime() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cross-validation was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cross-validation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Gets the number of folds.
+     *
+     * @return the number of folds
+     */
+    public int getFoldCount() {
+        return folds.length;
+    }
+
+    /**
+     * Runs the cross-validation of a classifier from the command line.
+     *
+     * @param args the classifier (mlp or knn), the number of folds or "files" to
+     *             use every dataset as one fold, and the datasets, which are
+     *             joined when the rows are split into folds
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || !(args[0].equals("mlp") || args[0].equals("knn"))) {
+            System.out.println("Usage: java digit_recognition.CrossValidation <mlp|knn> <folds|files> "
+                    + "<dataset> [dataset...]");
+            return;
+        }
+        try {
+            int[][][] datasets = new int[args.length - 2][][];
+            for (int index = 0; index < datasets.length; index++) {
+                datasets[index] = DatasetReader.readDataset(args[index + 2]);
+            }
+            CrossValidation validation = args[1].equals("files") ? new CrossValidation(datasets)
+                    : new CrossValidation(join(datasets), Integer.parseInt(args[1]), MultiLayerPerceptron.RANDOM_SEED);
+            Algorithm algorithm = args[0].equals("mlp") ? Algorithm.MULTI_LAYER_PERCEPTRON
+                    : Algorithm.K_NEAREST_NEIGHBOURS;
+            System.out.printf("Running %d folds with %s on %d thread(s)...%n", validation.getFoldCount(), algorithm,
+                    Math.min(FOLD_THREADS, validation.getFoldCount()));
+            UserInterface.printCrossValidation(validation.run(algorithm));
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage() + ". Please provide a valid path to the dataset.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid input: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Trains and evaluates the k-nearest neighbours on a fold. The neighbours
+     * are not scored on their own training rows, so the training accuracy is
+     * not a number.
+     *
+     * @param fold    the fold
+     * @param threads the number of threads classifying the testing rows
+     * @return the training and testing accuracies
+     */
+    private static double[] evaluateNeighbours(Fold fold, int threads) {
+        ToIntFunction<double[]> classifier = KNearestNeighbours.createClassifier(fold.trainingFeatures(),
+                fold.trainingLabels());
+        double[][] testingFeatures = fold.testingFeatures();
+        int[] testingLabels = fold.testingLabels();
+        int correct = KNearestNeighbours.countCorrectPredictions(classifier, testingFeatures, testingLabels, threads);
+        return new double[] { Double.NaN, (double) correct / testingFeatures.length };
+    }
+
+    /**
+     * Trains a network of the application on a fold and evaluates it. The
+     * network trains on a single thread, as the other folds keep the
+     * processors busy.
+     *
+     * @param fold    the fold
+     * @param threads the number of threads the fold may use, unused
+     * @return the training and testing accuracies
+     */
+    private static double[] evaluateNetwork(Fold fold, int threads) {
+        NetworkBase network = MultiLayerPerceptron.createNetwork();
+        network.setVerbose(false);
+        double trainingAccuracy = MultiLayerPerceptron.train(network, fold.trainingSet(), FOLD_TRAINING_MODE);
+        double testingAccuracy = network.evaluate(fold.testingSet());
+        return new double[] { trainingAccuracy, testingAccuracy };
+    }
+
+    /**
+     * Trains and evaluates one fold and times it.
+     *
+     * @param evaluator the training and evaluation of a fold
+     * @param fold      the fold
+     * @param threads   the number of threads the fold may use
+     * @return the result of the fold
+     */
+    private static FoldResult runFold(FoldEvaluator evaluator, Fold fold, int threads) {
+        long startTime = System.nanoTime();
+        double[] accuracies = evaluator.evaluate(fold, threads);
+        return new FoldResult(fold.index, fold.training.length, fold.testing.length, accuracies[0], accuracies[1],
+                System.nanoTime() - startTime);
+    }
+
+    /**
+     * Assigns the rows to folds at random, dealing out the rows of every digit
+     * in turn so that the folds differ in size by one row at most and hold about
+     * the same share of every digit.
+     *
+     * @param labels the labels of the rows
+     * @param folds  the number of folds
+     * @param seed   the seed of the shuffle
+     * @return the fold of every row
+     */
+    static int[] assignFolds(int[] labels, int folds, long seed) {
+        int[] shuffled = new int[labels.length];
+        for (int row = 0; row < shuffled.length; row++) {
+            shuffled[row] = row;
+        }
+        Utility.shuffle(shuffled, shuffled.length, new SplittableRandom(seed));
+        // Sorts the shuffled rows by label, keeping them shuffled within each label
+        int[] starts = new int[LABEL_COUNT + 1];
+        for (int label : labels) {
+            starts[label + 1]++;
+        }
+        for (int label = 0; label < LABEL_COUNT; label++) {
+            starts[label + 1] += starts[label];
+        }
+        int[] byLabel = new int[labels.length];
+        for (int row : shuffled) {
+            byLabel[starts[labels[row]]++] = row;
+        }
+        int[] foldOfRow = new int[labels.length];
+        for (int position = 0; position < byLabel.length; position++) {
+            foldOfRow[byLabel[position]] = position % folds;
+        }
+        return foldOfRow;
+    }
+
+    /**
+     * Creates the folds from the fold of every row. The rows of each fold are in
+     * the order of the dataset.
+     *
+     * @param foldOfRow the fold of every row
+     * @param count     the number of folds
+     * @return the folds
+     */
+    private Fold[] createFolds(int[] foldOfRow, int count) {
+        int[] sizes = new int[count];
+        for (int fold : foldOfRow) {
+            sizes[fold]++;
+        }
+        Fold[] created = new Fold[count];
+        for (int fold = 0; fold < count; fold++) {
+            int[] training = new int[foldOfRow.length - sizes[fold]];
+            int[] testing = new int[sizes[fold]];
+            int trainingCount = 0;
+            int testingCount = 0;
+            for (int row = 0; row < foldOfRow.length; row++) {
+                if (foldOfRow[row] == fold) {
+                    testing[testingCount++] = row;
+                } else {
+                    training[trainingCount++] = row;
+                }
+            }
+            created[fold] = new Fold(fold, training, testing);
+        }
+        return created;
+    }
+
+    /**
+     * Extracts and checks the labels of the rows.
+     *
+     * @param rows the rows, with the label last in every row
+     * @return the labels
+     */
+    private static int[] extractLabels(int[][] rows) {
+        int[] labels = new int[rows.length];
+        for (int row = 0; row < rows.length; row++) {
+            if (rows[row].length != FEATURES + 1) {
+                throw new IllegalArgumentException("Row " + row + " must hold " + (FEATURES + 1) + " values");
+            }
+            labels[row] = rows[row][FEATURES];
+            if (labels[row] < 0 || labels[row] >= LABEL_COUNT) {
+                throw new IllegalArgumentException("Label of row " + row + " must be a digit");
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Joins datasets into one, without copying their rows.
+     *
+     * @param datasets the datasets
+     * @return the rows of every dataset in turn
+     */
+    private static int[][] join(int[][][] datasets) {
+        List<int[]> joined = new ArrayList<>();
+        for (int[][] dataset : datasets) {
+            Collections.addAll(joined, dataset);
+        }
+        return joined.toArray(new int[0][]);
+    }
+
+    /**
+     * Gets the dataset of every row, built once for all the folds.
+     *
+     * @return the dataset
+     */
+    private synchronized DataSet sharedSet() {
+        if (set == null) {
+            try {
+                set = MultiLayerPerceptron.createSet(rows);
+            } catch (FileNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Gets the features of every row, built once for all the folds.
+     *
+     * @return the features
+     */
+    private synchronized double[][] sharedFeatures() {
+        if (features == null) {
+            features = new double[rows.length][FEATURES];
+            for (int row = 0; row < rows.length; row++) {
+                for (int feature = 0; feature < FEATURES; feature++) {
+                    features[row][feature] = rows[row][feature];
+                }
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Class representing one fold, reading the shared rows through the indices
+     * of its training and testing rows.
+     */
+    final class Fold {
+        private final int index;
+        private final int[] training;
+        private final int[] testing;
+
+        // Constructor
+        private Fold(int index, int[] training, int[] testing) {
+            this.index = index;
+            this.training = training;
+            this.testing = testing;
+        }
+
+        // Position of the fold, from zero
+        int getIndex() {
+            return index;
+        }
+
+        // View of the training rows, which copies no row
+        DataSet trainingSet() {
+            return sharedSet().view(training, 0, training.length);
+        }
+
+        // View of the testing rows, which copies no row
+        DataSet testingSet() {
+            return sharedSet().view(testing, 0, testing.length);
+        }
+
+        // Features of the training rows, sharing the arrays of every row
+        double[][] trainingFeatures() {
+            return gatherFeatures(training);
+        }
+
+        // Labels of the training rows
+        int[] trainingLabels() {
+            return gatherLabels(training);
+        }
+
+        // Features of the testing rows, sharing the arrays of every row
+        double[][] testingFeatures() {
+            return gatherFeatures(testing);
+        }
+
+        // Labels of the testing rows
+        int[] testingLabels() {
+            return gatherLabels(testing);
+        }
+
+        private double[][] gatherFeatures(int[] indices) {
+            double[][] shared = sharedFeatures();
+            double[][] gathered = new double[indices.length][];
+            for (int position = 0; position < indices.length; position++) {
+                gathered[position] = shared[indices[position]];
+            }
+            return gathered;
+        }
+
+        private int[] gatherLabels(int[] indices) {
+            int[] gathered = new int[indices.length];
+            for (int position = 0; position < indices.length; position++) {
+                gathered[position] = labels[indices[position]];
+            }
+            return gathered;
+        }
+    }
+
+    /**
+     * Class holding the result of one fold.
+     */
+    public static final class FoldResult {
+        private final int fold;
+        private final int trainingSize;
+        private final int testingSize;
+        private final double trainingAccuracy;
+        private final double testingAccuracy;
+        private final long elapsedNanos;
+
+        // Constructor
+        FoldResult(int fold, int trainingSize, int testingSize, double trainingAccuracy, double testingAccuracy,
+                long elapsedNanos) {
+            this.fold = fold;
+            this.trainingSize = trainingSize;
+            this.testingSize = testingSize;
+            this.trainingAccuracy = trainingAccuracy;
+            this.testingAccuracy = testingAccuracy;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the position of the fold, from zero.
+         *
+         * @return the position of the fold
+         */
+        public int getFold() {
+            return fold;
+        }
+
+        /**
+         * Gets the number of rows trained on.
+         *
+         * @return the number of training rows
+         */
+        public int getTrainingSize() {
+            return trainingSize;
+        }
+
+        /**
+         * Gets the number of rows tested on.
+         *
+         * @return the number of testing rows
+         */
+        public int getTestingSize() {
+            return testingSize;
+        }
+
+        /**
+         * Gets the accuracy on the training rows.
+         *
+         * @return the training accuracy, or not a number if the classifier is
+         *         not scored on its training rows
+         */
+        public double getTrainingAccuracy() {
+            return trainingAccuracy;
+        }
+
+        /**
+         * Gets the accuracy on the testing rows.
+         *
+         * @return the testing accuracy
+         */
+        public double getTestingAccuracy() {
+            return testingAccuracy;
+        }
+
+        /**
+         * Gets the time taken to train and evaluate the fold.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    /**
+     * Class holding the results of every fold of a cross-validation.
+     */
+    public static final class Result {
+        private final List<FoldResult> folds;
+        private final long elapsedNanos;
+
+        // Constructor
+        Result(List<FoldResult> folds, long elapsedNanos) {
+            this.folds = Collections.unmodifiableList(folds);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the results of the folds, in the order of the folds.
+         *
+         * @return the results of the folds
+         */
+        public List<FoldResult> getFolds() {
+            return folds;
+        }
+
+        /**
+         * Gets the mean of the training accuracies of the folds.
+         *
+         * @return the mean training accuracy, or not a number if the classifier
+         *         is not scored on its training rows
+         */
+        public double getMeanTrainingAccuracy() {
+            double sum = 0;
+            for (FoldResult fold : folds) {
+                sum += fold.trainingAccuracy;
+            }
+            return sum / folds.size();
+        }
+
+        /**
+         * Gets the mean of the testing accuracies of the folds.
+         *
+         * @return the mean testing accuracy
+         */
+        public double getMeanTestingAccuracy() {
+            double sum = 0;
+            for (FoldResult fold : folds) {
+                sum += fold.testingAccuracy;
+            }
+            return sum / folds.size();
+        }
+
+        /**
+         * Gets the standard deviation of the testing accuracies of the folds.
+         *
+         * @return the sample standard deviation of the testing accuracies
+         */
+        public double getTestingAccuracyDeviation() {
+            double mean = getMeanTestingAccuracy();
+            double sum = 0;
+            for (FoldResult fold : folds) {
+                sum += (fold.testingAccuracy - mean) * (fold.testingAccuracy - mean);
+            }
+            return Math.sqrt(sum / (folds.size() - 1));
+        }
+
+        /**
+         * Gets the wall time of the whole cross-validation.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets how many folds ran at once on average, which is the total time of
+         * the folds over the wall time. It is the speedup over running the folds
+         * one after the other as long as there are enough processors for them.
+         *
+         * @return the average number of folds running at once
+         */
+        public double getConcurrency() {
+            long total = 0;
+            for (FoldResult fold : folds) {
+                total += fold.elapsedNanos;
+            }
+            return (double) total / elapsedNanos;
+        }
+    }
+}
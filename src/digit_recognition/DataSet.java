@@ -1,64 +1,146 @@
 package digit_recognition;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Class representing the dataset.
+ *
+ * The data is stored by column: the features of every data point one after the
+ * other in a single flat array of the chosen feature type, and the labels in
+ * an int array. The expected outputs are one-hot, so only the index of the 1
+ * is kept. Reading a data point copies it into a caller's buffer, so that the
+ * training loops go through memory sequentially.
+ *
+ * A view reads some data points of another dataset through an array of
+ * indices, without copying them. Views cannot be added to.
  */
 public class DataSet {
+    // Number of data points the storage starts with when no capacity is given
+    private static final int INITIAL_CAPACITY = 64;
+
     // The size of the input and output
     private final int inputSize;
     private final int outputSize;
-    private List<DataPoint> data;
+    private final FeatureType featureType;
+    private FeatureColumn features;
+    private int[] labels;
+    private int size;
+    // Positions of the data points in the storage for a view, null otherwise
+    private final int[] indices;
+    private final int firstIndex;
 
     /**
-     * Constructor for the DataSet class.
+     * Constructor for the DataSet class, storing the features as doubles.
      * 
      * @param inputSize  The size of the input feature array.
      * @param outputSize The size of the output array.
      */
     public DataSet(int inputSize, int outputSize) {
+        this(inputSize, outputSize, FeatureType.DOUBLE, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor for the DataSet class.
+     * 
+     * @param inputSize   The size of the input feature array.
+     * @param outputSize  The size of the output array.
+     * @param featureType The element type the features are stored as.
+     * @param capacity    The number of data points to reserve storage for.
+     */
+    public DataSet(int inputSize, int outputSize, FeatureType featureType, int capacity) {
         this.inputSize = inputSize;
         this.outputSize = outputSize;
-        this.data = new ArrayList<>();
+        this.featureType = featureType;
+        this.features = FeatureColumn.create(featureType, Math.max(1, capacity) * inputSize);
+        this.labels = new int[Math.max(1, capacity)];
+        this.indices = null;
+        this.firstIndex = 0;
+    }
+
+    /**
+     * Constructor for a view over some data points of another dataset.
+     * 
+     * @param source  The dataset holding the data points.
+     * @param indices The array holding the indices of the data points.
+     * @param from    The position of the first index (inclusive).
+     * @param to      The position of the last index (exclusive).
+     */
+    private DataSet(DataSet source, int[] indices, int from, int to) {
+        this.inputSize = source.inputSize;
+        this.outputSize = source.outputSize;
+        this.featureType = source.featureType;
+        this.features = source.features;
+        this.labels = source.labels;
+        this.size = to - from;
+        // A view over a view reads the storage directly
+        if (source.indices != null) {
+            int[] resolved = new int[size];
+            for (int index = 0; index < size; index++) {
+                resolved[index] = source.indices[source.firstIndex + indices[from + index]];
+            }
+            this.indices = resolved;
+            this.firstIndex = 0;
+        } else {
+            this.indices = indices;
+            this.firstIndex = from;
+        }
     }
 
     /**
      * Adds a new data point to the dataset.
      * 
      * @param input    The input features of the data point.
-     * @param expected The expected output of the data point.
+     * @param expected The expected output of the data point, one-hot.
      */
     public void addData(double[] input, double[] expected) {
-        // Check if the input and output size match the expected size
-        if (input.length != inputSize || expected.length != outputSize) {
+        // Check if the output size match the expected size
+        if (expected.length != outputSize) {
             throw new IllegalArgumentException("Input or output size does not match the expected size.");
         }
-        // Add the data point to the list
-        data.add(new DataPoint(input, expected));
+        // Only the position of the 1 is stored
+        int label = Utility.returnIndexOfHighestValue(expected);
+        for (int index = 0; index < outputSize; index++) {
+            if (expected[index] != (index == label ? 1d : 0d)) {
+                throw new IllegalArgumentException("Expected output must be one-hot.");
+            }
+        }
+        addData(input, label);
     }
 
     /**
-     * Extracts a batch of data points from the training set.
+     * Adds a new data point to the dataset.
      * 
-     * @param size The size of the batch.
-     * @return A batch of data points.
-     */
-    public DataSet extractBatch(int size) {
-        // Create a new dataset
-        DataSet batch = new DataSet(inputSize, outputSize);
-        // Add random data points to the batch
-        if (size > 0 && size <= this.size()) {
-            // Get random indices
-            Integer[] ids = Utility.randomValues(0, this.size() - 1, size);
-            // Add the data points to the batch
-            for (Integer id : ids) {
-                DataPoint point = data.get(id);
-                batch.addData(point.getInput(), point.getOutput());
-            }
+     * @param input The input features of the data point.
+     * @param label The label of the data point, the index of the 1 in its output.
+     */
+    public void addData(double[] input, int label) {
+        // Check if the input size and the label match the expected size
+        if (input.length != inputSize || label < 0 || label >= outputSize) {
+            throw new IllegalArgumentException("Input or output size does not match the expected size.");
+        }
+        if (indices != null) {
+            throw new UnsupportedOperationException("Data cannot be added to a view.");
         }
-        return batch;
+        ensureCapacity(size + 1);
+        features.set(size * inputSize, input);
+        labels[size++] = label;
+    }
+
+    /**
+     * Creates a view over some data points of the dataset, without copying
+     * them. The indices are read whenever a data point of the view is read, so
+     * they must not change while the view is in use.
+     * 
+     * @param indices The array holding the indices of the data points.
+     * @param from    The position of the first index (inclusive).
+     * @param to      The position of the last index (exclusive).
+     * @return The view.
+     */
+    public DataSet view(int[] indices, int from, int to) {
+        if (from < 0 || to > indices.length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range: " + from + " to " + to);
+        }
+        return new DataSet(this, indices, from, to);
     }
 
     /**
@@ -67,37 +149,30 @@ public class DataSet {
      * @return The size of the dataset.
      */
     public int size() {
-        return data.size();
+        return size;
     }
 
     /**
-     * Retrieves the input features of a data point by index.
+     * Copies the input features of a data point into a buffer.
      * 
-     * @param index The index of the data point.
-     * @return The input features of the specified data point.
+     * @param index  The index of the data point.
+     * @param target The buffer receiving the features.
+     * @param offset The position of the first feature in the buffer.
+     * @return The buffer.
      */
-    public double[] getInput(int index) {
-        // Check if the index is valid
-        if (index < 0 || index >= size()) {
-            throw new IndexOutOfBoundsException("Invalid index: " + index);
-        }
-        // Return the input features
-        return data.get(index).getInput();
+    public double[] getInput(int index, double[] target, int offset) {
+        features.copyTo(position(index) * inputSize, target, offset, inputSize);
+        return target;
     }
 
     /**
-     * Retrieves the expected output of a data point by index.
+     * Retrieves the label of a data point by index.
      * 
      * @param index The index of the data point.
-     * @return The expected output of the specified data point.
+     * @return The index of the 1 in the expected output of the data point.
      */
-    public double[] getOutput(int index) {
-        // Check if the index is valid
-        if (index < 0 || index >= size()) {
-            throw new IndexOutOfBoundsException("Invalid index: " + index);
-        }
-        // Return the output
-        return data.get(index).getOutput();
+    public int getLabel(int index) {
+        return labels[position(index)];
     }
 
     /**
@@ -119,25 +194,177 @@ public class DataSet {
     }
 
     /**
-     * Inner class to represent a single data point in the training set.
+     * Gets the element type the features are stored as.
+     * 
+     * @return The feature type.
+     */
+    public FeatureType getFeatureType() {
+        return featureType;
+    }
+
+    /**
+     * Gets the number of bytes reserved for the features and the labels, which
+     * a view shares with its dataset.
+     * 
+     * @return The number of bytes.
+     */
+    public long getMemoryBytes() {
+        return features.bytes() + (long) labels.length * Integer.BYTES;
+    }
+
+    /**
+     * Finds the position in the storage of a data point of the dataset.
+     * 
+     * @param index The index of the data point.
+     * @return The position of the data point in the storage.
+     */
+    private int position(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        return indices == null ? index : indices[firstIndex + index];
+    }
+
+    /**
+     * Grows the storage so that it holds at least the given number of data points.
+     * 
+     * @param capacity The number of data points.
      */
-    private static class DataPoint {
-        private final double[] input;
-        private final double[] output;
+    private void ensureCapacity(int capacity) {
+        if (capacity > labels.length) {
+            int grown = Math.max(capacity, labels.length * 2);
+            features.resize(grown * inputSize);
+            labels = Arrays.copyOf(labels, grown);
+        }
+    }
+
+    /**
+     * Inner class holding the features of every data point in one flat array.
+     */
+    private abstract static class FeatureColumn {
+
+        // Creates an empty column of the given type
+        static FeatureColumn create(FeatureType type, int length) {
+            switch (type) {
+                case FLOAT:
+                    return new FloatColumn(length);
+                case UNSIGNED_BYTE:
+                    return new ByteColumn(length);
+                default:
+                    return new DoubleColumn(length);
+            }
+        }
+
+        // Stores the values starting at the offset
+        abstract void set(int offset, double[] values);
+
+        // Copies the values starting at the offset into the target
+        abstract void copyTo(int offset, double[] target, int targetOffset, int length);
+
+        // Changes the number of values the column holds
+        abstract void resize(int length);
+
+        // Returns the number of bytes of the array
+        abstract long bytes();
+    }
+
+    // Column storing every feature as a double
+    private static class DoubleColumn extends FeatureColumn {
+        private double[] values;
+
+        DoubleColumn(int length) {
+            values = new double[length];
+        }
+
+        @Override
+        void set(int offset, double[] source) {
+            System.arraycopy(source, 0, values, offset, source.length);
+        }
+
+        @Override
+        void copyTo(int offset, double[] target, int targetOffset, int length) {
+            System.arraycopy(values, offset, target, targetOffset, length);
+        }
+
+        @Override
+        void resize(int length) {
+            values = Arrays.copyOf(values, length);
+        }
 
-        // Constructor for the DataPoint class
-        public DataPoint(double[] input, double[] output) {
-            this.input = input;
-            this.output = output;
+        @Override
+        long bytes() {
+            return (long) values.length * Double.BYTES;
+        }
+    }
+
+    // Column storing every feature as a float
+    private static class FloatColumn extends FeatureColumn {
+        private float[] values;
+
+        FloatColumn(int length) {
+            values = new float[length];
+        }
+
+        @Override
+        void set(int offset, double[] source) {
+            for (int index = 0; index < source.length; index++) {
+                values[offset + index] = (float) source[index];
+            }
+        }
+
+        @Override
+        void copyTo(int offset, double[] target, int targetOffset, int length) {
+            for (int index = 0; index < length; index++) {
+                target[targetOffset + index] = values[offset + index];
+            }
+        }
+
+        @Override
+        void resize(int length) {
+            values = Arrays.copyOf(values, length);
+        }
+
+        @Override
+        long bytes() {
+            return (long) values.length * Float.BYTES;
+        }
+    }
+
+    // Column storing every feature as an unsigned byte
+    private static class ByteColumn extends FeatureColumn {
+        private byte[] values;
+
+        ByteColumn(int length) {
+            values = new byte[length];
+        }
+
+        @Override
+        void set(int offset, double[] source) {
+            for (int index = 0; index < source.length; index++) {
+                double value = source[index];
+                // Only whole values that fit in a byte are stored without loss
+                if (value < 0 || value > 255 || value != Math.rint(value)) {
+                    throw new IllegalArgumentException("Feature value cannot be stored as a byte: " + value);
+                }
+                values[offset + index] = (byte) value;
+            }
+        }
+
+        @Override
+        void copyTo(int offset, double[] target, int targetOffset, int length) {
+            for (int index = 0; index < length; index++) {
+                target[targetOffset + index] = values[offset + index] & 0xFF;
+            }
         }
 
-        // Getters for the input and output
-        public double[] getInput() {
-            return input;
+        @Override
+        void resize(int length) {
+            values = Arrays.copyOf(values, length);
         }
 
-        public double[] getOutput() {
-            return output;
+        @Override
+        long bytes() {
+            return values.length;
         }
     }
 }
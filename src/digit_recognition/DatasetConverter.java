@@ -0,0 +1,56 @@
+package digit_recognition;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Class responsible for converting CSV datasets to the binary format.
+ */
+public class DatasetConverter {
+    // Extension of the converted files
+    private static final String BINARY_EXTENSION = ".bin";
+
+    /**
+     * Converts every CSV file given on the command line to a binary file next to
+     * it, replacing the .csv extension with .bin.
+     *
+     * @param args paths to the CSV files
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java digit_recognition.DatasetConverter <dataset.csv>...");
+            return;
+        }
+        for (String csvPath : args) {
+            String binaryPath = toBinaryPath(csvPath);
+            try {
+                int[][] dataset = DatasetReader.readDataset(csvPath);
+                // The label is the last value of every row
+                int labelColumn = dataset.length == 0 ? 0 : dataset[0].length - 1;
+                BinaryDataset.write(dataset, labelColumn, binaryPath);
+                System.out.printf("Converted %s to %s (%d rows)\n", csvPath, binaryPath, dataset.length);
+            } catch (FileNotFoundException e) {
+                System.out.println(e.getMessage() + ". Please provide a valid path to the dataset.");
+            } catch (IOException e) {
+                System.out.println("Error when writing " + binaryPath + ": " + e.getMessage());
+            } catch (IllegalArgumentException | UncheckedIOException e) {
+                // A malformed file or a failed read of a mapped file
+                System.out.println("Error when converting " + csvPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Builds the path of the binary file for a CSV file.
+     *
+     * @param csvPath the path to the CSV file
+     * @return the path to the binary file
+     */
+    private static String toBinaryPath(String csvPath) {
+        if (csvPath.toLowerCase().endsWith(".csv")) {
+            return csvPath.substring(0, csvPath.length() - 4) + BINARY_EXTENSION;
+        }
+        return csvPath + BINARY_EXTENSION;
+    }
+}
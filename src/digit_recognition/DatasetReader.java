@@ -1,44 +1,505 @@
 package digit_recognition;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Class responsible for reading the dataset from a file.
+ *
+ * Files in the binary format are recognised by their header and read through
+ * {@link BinaryDataset}. CSV files are memory-mapped and parsed byte by byte without creating any
+ * intermediate strings. Large files are cut into chunks at line boundaries and
+ * the chunks are parsed in parallel, then joined in file order.
  */
 public class DatasetReader {
     // Constants for the dataset
-    private static final int DATA_SIZE = 2810;
-    private static final int SINGLE_INPUT_SIZE = 65;
+    static final int SINGLE_INPUT_SIZE = 65;
+    // Files smaller than this are parsed as a single chunk
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    // A single mapping cannot be larger than 2 GB
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+    // Size of the buffer the mapped bytes are copied into before parsing
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    static final int PARSE_THREADS = Runtime.getRuntime().availableProcessors();
 
     /**
-     * Reads the dataset from a file.
+     * Reads the dataset from a file. Binary datasets are mapped and then copied
+     * to the heap like parsed CSV files, which saves the parsing but not the
+     * heap; use {@link BinaryDataset#open(String)} to read the mapping in place.
      *
      * @param filePath path to the file with the dataset
-     * @return 2D array with the dataset
+     * @return 2D array with the dataset, one row per line of the file
      * @throws FileNotFoundException if the file is not found
      */
     public static int[][] readDataset(String filePath) throws FileNotFoundException {
-        // Create a 2D array to store the dataset
-        int[][] result = new int[DATA_SIZE][SINGLE_INPUT_SIZE];
-        // Read the dataset from the file
-        try (Scanner scanner = new Scanner(new File(filePath))) {
-            int resultIndex = 0;
-            // Read the dataset line by line
-            while (scanner.hasNextLine()) {
-                // Split the line by commas and parse the values to integers
-                String[] splitLine = scanner.nextLine().split(",");
-                // Create an array to store the parsed values
-                int[] dataLine = new int[SINGLE_INPUT_SIZE];
-                // Parse the values to integers
-                for (int index = 0; index < splitLine.length; index++) {
-                    dataLine[index] = Integer.parseInt(splitLine[index]);
-                }
-                // Store the parsed values in the result array
-                result[resultIndex++] = dataLine;
+        Path path = Paths.get(filePath);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(filePath + " (No such file or directory)");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (isBinaryDataset(channel)) {
+                return readBinaryDataset(filePath);
+            }
+            long[] boundaries = findChunkBoundaries(channel);
+            int chunks = boundaries.length - 1;
+            // Parse a single chunk on the calling thread
+            if (chunks == 1) {
+                return parseChunk(channel, boundaries[0], boundaries[1]).toRows();
+            }
+
+            // Parse every chunk on its own thread and join them in file order
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(chunks, PARSE_THREADS));
+            try {
+                List<Future<ParsedChunk>> parsedChunks = new ArrayList<>();
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    long start = boundaries[chunk];
+                    long end = boundaries[chunk + 1];
+                    parsedChunks.add(executor.submit(() -> parseChunk(channel, start, end)));
+                }
+                List<ParsedChunk> results = new ArrayList<>();
+                int rows = 0;
+                for (Future<ParsedChunk> parsedChunk : parsedChunks) {
+                    ParsedChunk result = parsedChunk.get();
+                    results.add(result);
+                    rows += result.rows;
+                }
+                int[][] dataset = new int[rows][];
+                int rowIndex = 0;
+                for (ParsedChunk result : results) {
+                    rowIndex = result.copyRows(dataset, rowIndex);
+                }
+                return dataset;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Reading " + filePath + " was interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Reading " + filePath + " failed", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error when reading " + filePath, e);
+        }
+    }
+
+    /**
+     * Opens the dataset in a file for reading one row at a time. Only a small
+     * read buffer is held in memory, whatever the size of the file.
+     *
+     * @param filePath path to the file with the dataset
+     * @return the reader of the rows, to be closed by the caller
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static RowReader openRows(String filePath) throws FileNotFoundException {
+        return openRows(filePath, SINGLE_INPUT_SIZE);
+    }
+
+    /**
+     * Opens a file for reading one row at a time, every row holding a given
+     * number of values. Rows of 64 values hold the features of unlabelled data
+     * points.
+     *
+     * @param filePath path to the file
+     * @param columns  the number of values per row
+     * @return the reader of the rows, to be closed by the caller
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static RowReader openRows(String filePath, int columns) throws FileNotFoundException {
+        Path path = Paths.get(filePath);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(filePath + " (No such file or directory)");
+        }
+        try {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (isBinaryDataset(channel)) {
+                    return new BinaryRowReader(openBinaryDataset(filePath, columns));
+                }
             }
+            return new CsvRowReader(Files.newInputStream(path), columns);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error when reading " + filePath, e);
+        }
+    }
+
+    /**
+     * Checks if the file starts with the header of the binary format.
+     *
+     * @param channel the channel of the file
+     * @return true if the file is a binary dataset, false otherwise
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean isBinaryDataset(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(magic, 0);
+        return !magic.hasRemaining() && magic.getInt(0) == BinaryDataset.MAGIC;
+    }
+
+    /**
+     * Reads a dataset stored in the binary format.
+     *
+     * @param filePath path to the binary file
+     * @return 2D array with the dataset
+     * @throws IOException if the file cannot be read
+     */
+    private static int[][] readBinaryDataset(String filePath) throws IOException {
+        return openBinaryDataset(filePath, SINGLE_INPUT_SIZE).toRows();
+    }
+
+    /**
+     * Opens a dataset stored in the binary format, checking that its rows have
+     * the layout of the CSV files.
+     *
+     * @param filePath path to the binary file
+     * @param columns  the number of values per row
+     * @return the mapped dataset
+     * @throws IOException if the file cannot be read
+     */
+    private static BinaryDataset openBinaryDataset(String filePath, int columns) throws IOException {
+        BinaryDataset dataset = BinaryDataset.open(filePath);
+        if (dataset.getColumnCount() != columns) {
+            throw new IllegalArgumentException(filePath + " must have " + columns + " values per row");
+        }
+        // The rest of the application expects the label in the last column
+        if (columns == SINGLE_INPUT_SIZE && dataset.getLabelColumn() != SINGLE_INPUT_SIZE - 1) {
+            throw new IllegalArgumentException(filePath + " must have the label last");
+        }
+        return dataset;
+    }
+
+    /**
+     * Splits the file into chunks that start at the beginning of a line.
+     *
+     * @param channel the channel of the file
+     * @return the offsets of the chunks, followed by the size of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static long[] findChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long minimumChunks = (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+        int chunks = (int) Math.max(Math.max(1, minimumChunks), Math.min(PARSE_THREADS, size / MIN_CHUNK_SIZE));
+        long[] boundaries = new long[chunks + 1];
+        boundaries[chunks] = size;
+        ByteBuffer single = ByteBuffer.allocate(1);
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            // Move the approximate boundary forward to the start of the next line
+            long position = Math.max(boundaries[chunk - 1], size * chunk / chunks);
+            while (position < size) {
+                single.clear();
+                channel.read(single, position++);
+                if (single.get(0) == '\n') {
+                    break;
+                }
+            }
+            boundaries[chunk] = position;
+        }
+        return boundaries;
+    }
+
+    /**
+     * Parses the rows of a chunk of the file.
+     *
+     * @param channel the channel of the file
+     * @param start   the offset of the chunk (inclusive)
+     * @param end     the end of the chunk (exclusive)
+     * @return the parsed rows
+     * @throws IOException if the file cannot be read
+     */
+    private static ParsedChunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        ParsedChunk result = new ParsedChunk();
+        CsvParser parser = new CsvParser(SINGLE_INPUT_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        long offset = start;
+        while (mapped.hasRemaining()) {
+            int length = Math.min(buffer.length, mapped.remaining());
+            mapped.get(buffer, 0, length);
+            int position = 0;
+            while ((position = parser.parseRow(buffer, position, length, offset)) >= 0) {
+                result.add(parser.row);
+            }
+            offset += length;
+        }
+        // The last line may not end with a line break
+        if (parser.finish(offset)) {
+            result.add(parser.row);
         }
         return result;
     }
+
+    /**
+     * Checks that a value is present and fits in the row.
+     *
+     * @param column    the column of the value
+     * @param columns   the number of values per row
+     * @param hasDigits whether the value has any digits
+     * @param offset    the byte offset in the file
+     */
+    private static void checkColumn(int column, int columns, boolean hasDigits, long offset) {
+        if (!hasDigits) {
+            throw new IllegalArgumentException("Missing value at byte " + offset);
+        }
+        if (column >= columns) {
+            throw new IllegalArgumentException("Row has more than " + columns + " values at byte " + offset);
+        }
+    }
+
+    /**
+     * Checks that a complete row has the expected number of values.
+     *
+     * @param found   the number of values in the row
+     * @param columns the number of values per row
+     * @param offset  the byte offset in the file
+     */
+    private static void checkRowLength(int found, int columns, long offset) {
+        if (found != columns) {
+            throw new IllegalArgumentException("Row ending at byte " + offset + " has " + found
+                    + " values instead of " + columns);
+        }
+    }
+
+    /**
+     * Class holding the state of the CSV parser between two buffers, so that a
+     * row may be split anywhere across them.
+     */
+    private static class CsvParser {
+        // Values of the last completed row
+        private final int[] row;
+        private int column;
+        private int value;
+        private boolean negative;
+        private boolean hasDigits;
+        // Whether a space or carriage return followed the value, after which only a separator may come
+        private boolean ended;
+
+        // Constructor for the CsvParser class, parsing rows of the given number of values
+        CsvParser(int columns) {
+            this.row = new int[columns];
+        }
+
+        /**
+         * Parses bytes until a row is complete.
+         *
+         * @param buffer the bytes to parse
+         * @param from   the index of the first byte to parse
+         * @param to     the index after the last byte to parse
+         * @param offset the byte offset of the buffer in the file
+         * @return the index after the line break ending the row, or -1 if the
+         *         bytes ran out before the end of a row
+         */
+        int parseRow(byte[] buffer, int from, int to, long offset) {
+            // The state is kept in locals while parsing and saved when the bytes run out
+            int column = this.column;
+            int value = this.value;
+            boolean negative = this.negative;
+            boolean hasDigits = this.hasDigits;
+            boolean ended = this.ended;
+            for (int index = from; index < to; index++) {
+                byte character = buffer[index];
+                if (character >= '0' && character <= '9') {
+                    int digit = character - '0';
+                    if (ended) {
+                        throw new IllegalArgumentException("Space inside a value at byte " + (offset + index));
+                    }
+                    // Values beyond the range of an int are rejected instead of wrapping around
+                    if (value > (Integer.MAX_VALUE - digit) / 10) {
+                        throw new IllegalArgumentException("Value out of range at byte " + (offset + index));
+                    }
+                    value = value * 10 + digit;
+                    hasDigits = true;
+                } else if (character == ',') {
+                    checkColumn(column, row.length, hasDigits, offset + index);
+                    row[column++] = negative ? -value : value;
+                    value = 0;
+                    negative = false;
+                    hasDigits = false;
+                    ended = false;
+                } else if (character == '\n') {
+                    // Blank lines are skipped, but a line holding a lone sign is missing its value
+                    if (column > 0 || hasDigits || negative) {
+                        checkColumn(column, row.length, hasDigits, offset + index);
+                        row[column++] = negative ? -value : value;
+                        checkRowLength(column, row.length, offset + index);
+                        clear();
+                        return index + 1;
+                    }
+                    ended = false;
+                } else if (character == '-' && !hasDigits && !negative) {
+                    negative = true;
+                } else if (character == '\r' || character == ' ') {
+                    // Spaces may surround a value but not split it
+                    ended = hasDigits || negative;
+                } else {
+                    throw new IllegalArgumentException(
+                            "Unexpected character '" + (char) character + "' at byte " + (offset + index));
+                }
+            }
+            this.column = column;
+            this.value = value;
+            this.negative = negative;
+            this.hasDigits = hasDigits;
+            this.ended = ended;
+            return -1;
+        }
+
+        /**
+         * Completes the last row when the file does not end with a line break.
+         *
+         * @param offset the byte offset of the end of the file
+         * @return true if a row was completed, false otherwise
+         */
+        boolean finish(long offset) {
+            if (column == 0 && !hasDigits && !negative) {
+                return false;
+            }
+            checkColumn(column, row.length, hasDigits, offset);
+            row[column] = negative ? -value : value;
+            checkRowLength(column + 1, row.length, offset);
+            clear();
+            return true;
+        }
+
+        // Starts a new row
+        private void clear() {
+            column = 0;
+            value = 0;
+            negative = false;
+            hasDigits = false;
+            ended = false;
+        }
+    }
+
+    /**
+     * Class reading the rows of a CSV file in order through a fixed-size buffer.
+     */
+    private static class CsvRowReader implements RowReader {
+        private final InputStream input;
+        private final CsvParser parser;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private int position;
+        private int length;
+        // Byte offset of the buffer in the file
+        private long offset;
+        private boolean finished;
+
+        // Constructor for the CsvRowReader class
+        CsvRowReader(InputStream input, int columns) {
+            this.input = input;
+            this.parser = new CsvParser(columns);
+        }
+
+        @Override
+        public boolean readRow(int[] row) throws IOException {
+            while (true) {
+                if (position < length) {
+                    int next = parser.parseRow(buffer, position, length, offset);
+                    if (next >= 0) {
+                        position = next;
+                        System.arraycopy(parser.row, 0, row, 0, parser.row.length);
+                        return true;
+                    }
+                }
+                if (finished) {
+                    return false;
+                }
+                // Refill the buffer with the next part of the file
+                offset += length;
+                position = 0;
+                length = input.read(buffer);
+                if (length < 0) {
+                    length = 0;
+                    finished = true;
+                    // The last line may not end with a line break
+                    if (parser.finish(offset)) {
+                        System.arraycopy(parser.row, 0, row, 0, parser.row.length);
+                        return true;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Class reading the rows of a binary dataset in order from its mapping.
+     */
+    private static class BinaryRowReader implements RowReader {
+        private final BinaryDataset dataset;
+        private int nextRow;
+
+        // Constructor for the BinaryRowReader class
+        BinaryRowReader(BinaryDataset dataset) {
+            this.dataset = dataset;
+        }
+
+        @Override
+        public boolean readRow(int[] row) {
+            if (nextRow >= dataset.size()) {
+                return false;
+            }
+            dataset.getRow(nextRow++, row);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // The mapping is released by the garbage collector
+        }
+    }
+
+    /**
+     * Class holding the rows of a chunk in one growable flat array.
+     */
+    private static class ParsedChunk {
+        private int[] values = new int[SINGLE_INPUT_SIZE * 1024];
+        private int rows;
+
+        // Appends a complete row
+        void add(int[] row) {
+            if ((rows + 1) * SINGLE_INPUT_SIZE > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            System.arraycopy(row, 0, values, rows * SINGLE_INPUT_SIZE, SINGLE_INPUT_SIZE);
+            rows++;
+        }
+
+        // Copies the rows into the dataset starting at the given index
+        int copyRows(int[][] dataset, int rowIndex) {
+            for (int row = 0; row < rows; row++) {
+                dataset[rowIndex++] = Arrays.copyOfRange(values, row * SINGLE_INPUT_SIZE,
+                        (row + 1) * SINGLE_INPUT_SIZE);
+            }
+            return rowIndex;
+        }
+
+        // Returns the rows of this chunk alone
+        int[][] toRows() {
+            int[][] dataset = new int[rows][];
+            copyRows(dataset, 0);
+            return dataset;
+        }
+    }
 }
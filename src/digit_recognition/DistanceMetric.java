@@ -0,0 +1,140 @@
+package digit_recognition;
+
+/**
+ * Enum representing the distance metrics the k-nearest neighbours algorithm
+ * can rank neighbours by.
+ *
+ * The values returned only need to order neighbours the same way as the
+ * metric, so the Euclidean distance is returned squared. The bounded
+ * evaluation visits the dimensions in a given order and stops as soon as the
+ * partial distance is bigger than the bound, which can never change which
+ * neighbours are kept.
+ */
+public enum DistanceMetric {
+    EUCLIDEAN {
+        @Override
+        public double distance(double[] point1, double[] point2) {
+            double sum = 0.0;
+            for (int dimension = 0; dimension < point1.length; dimension++) {
+                double difference = point1[dimension] - point2[dimension];
+                sum += difference * difference;
+            }
+            return sum;
+        }
+
+        @Override
+        public double boundedDistance(double[] point1, double[] point2, int[] order, double bound) {
+            double sum = 0.0;
+            int index = 0;
+            while (index < order.length) {
+                int blockEnd = Math.min(index + BLOCK_SIZE, order.length);
+                for (; index < blockEnd; index++) {
+                    int dimension = order[index];
+                    double difference = point1[dimension] - point2[dimension];
+                    sum += difference * difference;
+                }
+                // The partial sum only grows, so the point can be dropped already
+                if (sum > bound) {
+                    return sum;
+                }
+            }
+            return sum;
+        }
+    },
+    MANHATTAN {
+        @Override
+        public double distance(double[] point1, double[] point2) {
+            return Utility.calculateManhattanDistance(point1, point2);
+        }
+
+        @Override
+        public double boundedDistance(double[] point1, double[] point2, int[] order, double bound) {
+            double sum = 0.0;
+            int index = 0;
+            while (index < order.length) {
+                int blockEnd = Math.min(index + BLOCK_SIZE, order.length);
+                for (; index < blockEnd; index++) {
+                    int dimension = order[index];
+                    sum += Math.abs(point1[dimension] - point2[dimension]);
+                }
+                // The partial sum only grows, so the point can be dropped already
+                if (sum > bound) {
+                    return sum;
+                }
+            }
+            return sum;
+        }
+    },
+    CHEBYSHEV {
+        @Override
+        public double distance(double[] point1, double[] point2) {
+            double largest = 0.0;
+            for (int dimension = 0; dimension < point1.length; dimension++) {
+                largest = Math.max(largest, Math.abs(point1[dimension] - point2[dimension]));
+            }
+            return largest;
+        }
+
+        @Override
+        public double boundedDistance(double[] point1, double[] point2, int[] order, double bound) {
+            double largest = 0.0;
+            for (int index = 0; index < order.length; index++) {
+                int dimension = order[index];
+                largest = Math.max(largest, Math.abs(point1[dimension] - point2[dimension]));
+                // The largest difference only grows, so the point can be dropped already
+                if (largest > bound) {
+                    return largest;
+                }
+            }
+            return largest;
+        }
+    },
+    COSINE {
+        @Override
+        public double distance(double[] point1, double[] point2) {
+            double product = 0.0;
+            double norm1 = 0.0;
+            double norm2 = 0.0;
+            for (int dimension = 0; dimension < point1.length; dimension++) {
+                product += point1[dimension] * point2[dimension];
+                norm1 += point1[dimension] * point1[dimension];
+                norm2 += point2[dimension] * point2[dimension];
+            }
+            // A zero vector has no direction so it is treated as unrelated to any point
+            if (norm1 == 0.0 || norm2 == 0.0) {
+                return 1.0;
+            }
+            return 1.0 - product / Math.sqrt(norm1 * norm2);
+        }
+
+        @Override
+        public double boundedDistance(double[] point1, double[] point2, int[] order, double bound) {
+            // The partial cosine distance is not monotonic so it is always computed in full
+            return distance(point1, point2);
+        }
+    };
+
+    // Number of dimensions added up between two checks against the bound
+    private static final int BLOCK_SIZE = 8;
+
+    /**
+     * Calculates the distance between two points.
+     *
+     * @param point1 the first point
+     * @param point2 the second point
+     * @return the distance, squared for the Euclidean metric
+     */
+    public abstract double distance(double[] point1, double[] point2);
+
+    /**
+     * Calculates the distance between two points, stopping early once it is
+     * certain to be bigger than the bound.
+     *
+     * @param point1 the first point
+     * @param point2 the second point
+     * @param order  the order in which the dimensions are visited
+     * @param bound  the distance above which the exact value is not needed
+     * @return the distance, or a partial distance bigger than the bound
+     */
+    public abstract double boundedDistance(double[] point1, double[] point2, int[] order, double bound);
+}
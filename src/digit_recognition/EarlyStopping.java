@@ -0,0 +1,190 @@
+package digit_recognition;
+
+/**
+ * Class deciding when to stop training a network. Every few epochs the
+ * network is scored on a validation set held out of the training set, and
+ * training stops once the score has not improved for a number of checks in a
+ * row. The best check is remembered, so that its weights can be restored.
+ *
+ * A monitor follows one training run at a time and starts over whenever a
+ * training run starts.
+ */
+public class EarlyStopping {
+    private final DataSet validationSet;
+    private final StoppingMetric metric;
+    private final int interval;
+    private final int patience;
+    private final double minimumImprovement;
+    private final boolean restoreBestWeights;
+
+    // Progress of the current training run
+    private int checks;
+    private int checksWithoutImprovement;
+    private int bestEpoch;
+    private int lastEpoch;
+    private double bestLoss;
+    private double bestAccuracy;
+
+    /**
+     * Constructor for the monitor.
+     *
+     * @param validationSet      the samples scored at every check, which the
+     *                           network must not train on
+     * @param metric             the score that has to improve
+     * @param interval           the number of epochs between two checks
+     * @param patience           the number of checks in a row without
+     *                           improvement after which training stops
+     * @param minimumImprovement the smallest change of the score counted as an
+     *                           improvement
+     * @param restoreBestWeights whether the network gets back the weights of the
+     *                           best check once training stops
+     */
+    public EarlyStopping(DataSet validationSet, StoppingMetric metric, int interval, int patience,
+            double minimumImprovement, boolean restoreBestWeights) {
+        if (validationSet.size() == 0) {
+            throw new IllegalArgumentException("The validation set cannot be empty");
+        }
+        if (interval < 1 || patience < 1 || minimumImprovement < 0) {
+            throw new IllegalArgumentException("The interval and patience must be positive and the minimum "
+                    + "improvement cannot be negative");
+        }
+        this.validationSet = validationSet;
+        this.metric = metric;
+        this.interval = interval;
+        this.patience = patience;
+        this.minimumImprovement = minimumImprovement;
+        this.restoreBestWeights = restoreBestWeights;
+        reset();
+    }
+
+    /**
+     * Forgets the checks of the previous training run.
+     */
+    void reset() {
+        checks = 0;
+        checksWithoutImprovement = 0;
+        bestEpoch = 0;
+        lastEpoch = 0;
+        bestLoss = Double.POSITIVE_INFINITY;
+        bestAccuracy = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Tells whether the network is checked after an epoch.
+     *
+     * @param epoch  the number of epochs trained so far
+     * @param epochs the number of epochs of the training run
+     * @return true if the network is checked, which is always the case after
+     *         the last epoch
+     */
+    boolean isCheckedAfter(int epoch, int epochs) {
+        return epoch % interval == 0 || epoch == epochs;
+    }
+
+    /**
+     * Records the scores of a check.
+     *
+     * @param epoch    the number of epochs trained so far
+     * @param loss     the loss on the validation set
+     * @param accuracy the accuracy on the validation set
+     * @return true if the check is the best so far
+     */
+    boolean record(int epoch, double loss, double accuracy) {
+        checks++;
+        lastEpoch = epoch;
+        boolean improved = metric == StoppingMetric.LOSS ? loss < bestLoss - minimumImprovement
+                : accuracy > bestAccuracy + minimumImprovement;
+        if (improved) {
+            bestEpoch = epoch;
+            bestLoss = loss;
+            bestAccuracy = accuracy;
+            checksWithoutImprovement = 0;
+        } else {
+            checksWithoutImprovement++;
+        }
+        return improved;
+    }
+
+    /**
+     * Tells whether the score has stopped improving.
+     *
+     * @return true if training should stop
+     */
+    boolean shouldStop() {
+        return checksWithoutImprovement >= patience;
+    }
+
+    /**
+     * Gets the samples scored at every check.
+     *
+     * @return the validation set
+     */
+    public DataSet getValidationSet() {
+        return validationSet;
+    }
+
+    /**
+     * Tells whether the network gets back the weights of the best check.
+     *
+     * @return true if the best weights are restored
+     */
+    public boolean isRestoringBestWeights() {
+        return restoreBestWeights;
+    }
+
+    /**
+     * Gets the number of checks made in the last training run.
+     *
+     * @return the number of checks
+     */
+    public int getChecks() {
+        return checks;
+    }
+
+    /**
+     * Gets the number of epochs trained when the best check was made.
+     *
+     * @return the epoch of the best check
+     */
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+
+    /**
+     * Gets the number of epochs trained when the last check was made, which is
+     * where training stopped.
+     *
+     * @return the epoch of the last check
+     */
+    public int getLastEpoch() {
+        return lastEpoch;
+    }
+
+    /**
+     * Tells whether the score of the last training run stopped improving for
+     * as many checks as the patience, which stopped the training.
+     *
+     * @return true if training was stopped
+     */
+    public boolean hasStopped() {
+        return shouldStop();
+    }
+
+    /**
+     * Gets the validation loss of the best check.
+     *
+     * @return the best loss
+     */
+    public double getBestLoss() {
+        return bestLoss;
+    }
+
+    /**
+     * Gets the validation accuracy of the best check.
+     *
+     * @return the best accuracy
+     */
+    public double getBestAccuracy() {
+        return bestAccuracy;
+    }
+}
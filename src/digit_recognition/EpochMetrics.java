@@ -0,0 +1,152 @@
+package digit_recognition;
+
+/**
+ * Class holding the measurements of one training epoch: its throughput, the
+ * mean loss of the samples it trained on, the time spent in every phase and
+ * the memory it allocated.
+ *
+ * The phase times are summed over the training threads, so in the parallel
+ * modes they add up to more than the elapsed time. They leave out the
+ * bookkeeping between phases, so in a single thread they add up to a little
+ * less.
+ */
+public final class EpochMetrics {
+    private final int epoch;
+    private final long samples;
+    private final int threads;
+    private final long elapsedNanos;
+    private final long samplingNanos;
+    private final long forwardNanos;
+    private final long backwardNanos;
+    private final long updateNanos;
+    private final double loss;
+    private final long allocatedBytes;
+
+    /**
+     * Constructor for the measurements of an epoch.
+     *
+     * @param epoch          the epoch, from 1 within its training run
+     * @param samples        the number of samples trained on
+     * @param threads        the number of training threads
+     * @param elapsedNanos   the wall-clock time of the epoch in nanoseconds
+     * @param times          the phase times, loss and allocations summed over
+     *                       the threads
+     * @param allocatedBytes the memory allocated by every thread, or -1 if it
+     *                       is not counted
+     */
+    EpochMetrics(int epoch, long samples, int threads, long elapsedNanos, PhaseTimes times, long allocatedBytes) {
+        this.epoch = epoch;
+        this.samples = samples;
+        this.threads = threads;
+        this.elapsedNanos = elapsedNanos;
+        this.samplingNanos = times.getSamplingNanos();
+        this.forwardNanos = times.getForwardNanos();
+        this.backwardNanos = times.getBackwardNanos();
+        this.updateNanos = times.getUpdateNanos();
+        this.loss = times.getMeanLoss();
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Gets the epoch, counted from 1 within its training run.
+     *
+     * @return the epoch
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Gets the number of samples trained on.
+     *
+     * @return the number of samples
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Gets the number of training threads.
+     *
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets the wall-clock time of the epoch.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the training throughput of the epoch.
+     *
+     * @return the number of samples trained on per second
+     */
+    public double getSamplesPerSecond() {
+        return samples * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Gets the time spent drawing the batches from the training set.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getSamplingNanos() {
+        return samplingNanos;
+    }
+
+    /**
+     * Gets the time spent in forward passes.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    /**
+     * Gets the time spent in backward passes, summing the gradients of the
+     * batches included.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getBackwardNanos() {
+        return backwardNanos;
+    }
+
+    /**
+     * Gets the time spent updating the weights.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    /**
+     * Gets the mean training loss of the samples, computed from their forward
+     * pass before the weights were updated: the cross-entropy for a softmax
+     * output, else the squared error.
+     *
+     * @return the mean loss
+     */
+    public double getLoss() {
+        return loss;
+    }
+
+    /**
+     * Gets the memory allocated by the training threads during the epoch.
+     *
+     * @return the number of bytes, or -1 if the virtual machine does not count
+     *         them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
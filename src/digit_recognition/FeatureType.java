@@ -0,0 +1,13 @@
+package digit_recognition;
+
+/**
+ * Enum representing the element types a dataset can store its features as.
+ */
+public enum FeatureType {
+    // 8 bytes per feature, any value
+    DOUBLE,
+    // 4 bytes per feature, rounded to single precision
+    FLOAT,
+    // 1 byte per feature, integer values between 0 and 255 only
+    UNSIGNED_BYTE
+}
@@ -0,0 +1,193 @@
+package digit_recognition;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Class holding the parameters and activations of a network in single
+ * precision. Every array is half the size of its double counterpart, so twice
+ * as many values fit in the caches and in every SIMD register.
+ *
+ * Only the per-sample passes are implemented; the network uses them for
+ * stochastic training and for inference.
+ */
+class FloatNetwork {
+    private final int[] layerSizes;
+    private final int networkSize;
+
+    private final float[][] output;
+    // Weights of each layer stored row-major in a single array, one row per neuron
+    private final float[][] weights;
+    private final float[][] bias;
+
+    private final float[][] error_signal;
+    private final float[][] output_derivative;
+    // Activation function of every layer after the input, owned by the network
+    private final Activation[] activations;
+
+    /**
+     * Constructor for the FloatNetwork class.
+     *
+     * @param layerSizes  the network layer sizes
+     * @param activations the activation function of every layer after the
+     *                    input
+     * @param random      the source of the initial weights
+     */
+    FloatNetwork(int[] layerSizes, Activation[] activations, SplittableRandom random) {
+        this.layerSizes = layerSizes;
+        this.networkSize = layerSizes.length;
+        this.activations = activations;
+        this.output = new float[networkSize][];
+        this.weights = new float[networkSize][];
+        this.bias = new float[networkSize][];
+        this.error_signal = new float[networkSize][];
+        this.output_derivative = new float[networkSize][];
+        for (int index = 0; index < networkSize; index++) {
+            this.output[index] = new float[layerSizes[index]];
+            this.error_signal[index] = new float[layerSizes[index]];
+            this.output_derivative[index] = new float[layerSizes[index]];
+            // The parameters are drawn from the same ranges as the double network
+            if (index > 0) {
+                this.weights[index] = toFloat(Utility.buildRandomArray(layerSizes[index] * layerSizes[index - 1],
+                        MultiLayerPerceptron.WEIGHTS_RANGE_SMALLEST, MultiLayerPerceptron.WEIGHTS_RANGE_BIGGEST,
+                        random));
+                this.bias[index] = toFloat(Utility.buildRandomArray(layerSizes[index],
+                        MultiLayerPerceptron.BIAS_RANGE_SMALLEST, MultiLayerPerceptron.BIAS_RANGE_BIGGEST, random));
+            }
+        }
+    }
+
+    /**
+     * Performs a forward pass through the network.
+     *
+     * @param input  the input
+     * @param result the array receiving the output of the last layer
+     */
+    void forward(double[] input, double[] result) {
+        for (int index = 0; index < layerSizes[0]; index++) {
+            output[0][index] = (float) input[index];
+        }
+        for (int layer = 1; layer < networkSize; layer++) {
+            int previousSize = layerSizes[layer - 1];
+            for (int neuron = 0; neuron < layerSizes[layer]; neuron++) {
+                output[layer][neuron] = VectorKernels.dot(weights[layer], neuron * previousSize, output[layer - 1],
+                        0, previousSize) + bias[layer][neuron];
+            }
+            activations[layer].activate(output[layer], 0, layerSizes[layer]);
+            for (int neuron = 0; neuron < layerSizes[layer]; neuron++) {
+                // Saturated outputs are flushed to zero so that they never turn subnormal
+                float value = flushSubnormal(output[layer][neuron]);
+                output[layer][neuron] = value;
+                if (layer < networkSize - 1) {
+                    output_derivative[layer][neuron] = (float) activations[layer].derivative(value);
+                }
+            }
+        }
+        float[] last = output[networkSize - 1];
+        for (int neuron = 0; neuron < last.length; neuron++) {
+            result[neuron] = last[neuron];
+        }
+    }
+
+    /**
+     * Performs a backward pass through the network, computing the error signals.
+     *
+     * @param label the index of the 1 in the one-hot target
+     */
+    void backward(int label) {
+        int outputLayer = networkSize - 1;
+        for (int neuron = 0; neuron < layerSizes[outputLayer]; neuron++) {
+            error_signal[outputLayer][neuron] = flushSubnormal((float) activations[outputLayer]
+                    .outputError(output[outputLayer][neuron], neuron == label ? 1 : 0));
+        }
+        for (int layer = outputLayer - 1; layer > 0; layer--) {
+            int layerSize = layerSizes[layer];
+            float[] errors = error_signal[layer];
+            Arrays.fill(errors, 0f);
+            for (int nextNeuron = 0; nextNeuron < layerSizes[layer + 1]; nextNeuron++) {
+                VectorKernels.axpy(error_signal[layer + 1][nextNeuron], weights[layer + 1], nextNeuron * layerSize,
+                        errors, 0, layerSize);
+            }
+            for (int neuron = 0; neuron < layerSize; neuron++) {
+                errors[neuron] = flushSubnormal(errors[neuron] * output_derivative[layer][neuron]);
+            }
+        }
+    }
+
+    /**
+     * Updates the weights and biases from the error signals of the last
+     * backward pass.
+     *
+     * @param learningRate the learning rate
+     */
+    void updateWeights(float learningRate) {
+        for (int layer = 1; layer < networkSize; layer++) {
+            int previousSize = layerSizes[layer - 1];
+            for (int neuron = 0; neuron < layerSizes[layer]; neuron++) {
+                float delta = -learningRate * error_signal[layer][neuron];
+                bias[layer][neuron] += delta;
+                VectorKernels.axpy(delta, output[layer - 1], 0, weights[layer], neuron * previousSize, previousSize);
+            }
+        }
+    }
+
+    /**
+     * Replaces a subnormal value with zero. Saturated sigmoids produce subnormal
+     * floats long before they would produce subnormal doubles, and every
+     * operation on them takes the slow path of the processor.
+     *
+     * @param value the value
+     * @return the value, or zero if it is subnormal
+     */
+    private static float flushSubnormal(float value) {
+        return Math.abs(value) < Float.MIN_NORMAL ? 0f : value;
+    }
+
+    /**
+     * Takes an immutable copy of the parameters for inference.
+     *
+     * @return the snapshot of the network
+     */
+    InferenceModel snapshot() {
+        return new InferenceModel(layerSizes, activations, weights, bias);
+    }
+
+    /**
+     * Writes the weights and then the biases of every layer to a buffer.
+     *
+     * @param buffer the buffer
+     */
+    void writeParameters(ByteBuffer buffer) {
+        for (int layer = 1; layer < networkSize; layer++) {
+            buffer.asFloatBuffer().put(weights[layer]).put(bias[layer]);
+            buffer.position(buffer.position() + (weights[layer].length + bias[layer].length) * Float.BYTES);
+        }
+    }
+
+    /**
+     * Reads the weights and then the biases of every layer from a buffer.
+     *
+     * @param buffer the buffer
+     */
+    void readParameters(ByteBuffer buffer) {
+        for (int layer = 1; layer < networkSize; layer++) {
+            buffer.asFloatBuffer().get(weights[layer]).get(bias[layer]);
+            buffer.position(buffer.position() + (weights[layer].length + bias[layer].length) * Float.BYTES);
+        }
+    }
+
+    /**
+     * Narrows an array of doubles to single precision.
+     *
+     * @param values the values
+     * @return the values as floats
+     */
+    private static float[] toFloat(double[] values) {
+        float[] result = new float[values.length];
+        for (int index = 0; index < values.length; index++) {
+            result[index] = (float) values[index];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,105 @@
+package digit_recognition;
+
+/**
+ * Enum representing the settings a hyperparameter search can tune, each with
+ * the classifier it applies to and the value the application uses.
+ */
+public enum Hyperparameter {
+    // Step size of the weight updates
+    LEARNING_RATE("learningRate", Algorithm.MULTI_LAYER_PERCEPTRON, false, MultiLayerPerceptron.LEARNING_RATE),
+    // Training epochs, which successive halving shares out between the rungs
+    EPOCHS("epochs", Algorithm.MULTI_LAYER_PERCEPTRON, true, MultiLayerPerceptron.TRAINING_EPOCHS_VALUE),
+    // Batches drawn in every epoch
+    LOOPS("loops", Algorithm.MULTI_LAYER_PERCEPTRON, true, MultiLayerPerceptron.TRAINING_LOOPS_VALUE),
+    // Samples in every batch
+    BATCH_SIZE("batchSize", Algorithm.MULTI_LAYER_PERCEPTRON, true, MultiLayerPerceptron.TRAINING_BATCH_SIZE),
+    // Nodes of the first hidden layer
+    FIRST_HIDDEN_LAYER("firstHidden", Algorithm.MULTI_LAYER_PERCEPTRON, true,
+            MultiLayerPerceptron.FIRST_HIDDEN_LAYER_NODE_AMOUNT),
+    // Nodes of the second hidden layer
+    SECOND_HIDDEN_LAYER("secondHidden", Algorithm.MULTI_LAYER_PERCEPTRON, true,
+            MultiLayerPerceptron.SECOND_HIDDEN_LAYER_NODE_AMOUNT),
+    // Neighbours voting for the label
+    K("k", Algorithm.K_NEAREST_NEIGHBOURS, true, KNearestNeighbours.K);
+
+    private final String option;
+    private final Algorithm algorithm;
+    private final boolean integer;
+    private final double defaultValue;
+
+    // Constructor
+    Hyperparameter(String option, Algorithm algorithm, boolean integer, double defaultValue) {
+        this.option = option;
+        this.algorithm = algorithm;
+        this.integer = integer;
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Gets the name of the setting on the command line and in the results.
+     *
+     * @return the name of the setting
+     */
+    public String getOption() {
+        return option;
+    }
+
+    /**
+     * Gets the classifier the setting applies to.
+     *
+     * @return the classifier
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Gets the value the application uses.
+     *
+     * @return the default value
+     */
+    public double getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * Parses a value of the setting, which must be positive and, for the
+     * settings counting something, a whole number.
+     *
+     * @param text the value
+     * @return the parsed value
+     */
+    public double parse(String text) {
+        double value = Double.parseDouble(text.trim());
+        if (!(value > 0) || Double.isInfinite(value) || (integer && value != Math.rint(value))) {
+            throw new IllegalArgumentException(option + " must be a positive " + (integer ? "whole " : "")
+                    + "number, not " + text.trim());
+        }
+        return value;
+    }
+
+    /**
+     * Formats a value of the setting the way it is parsed.
+     *
+     * @param value the value
+     * @return the formatted value
+     */
+    public String format(double value) {
+        return integer ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * Finds the setting with the given name.
+     *
+     * @param option the name of the setting
+     * @return the setting
+     */
+    public static Hyperparameter forOption(String option) {
+        for (Hyperparameter parameter : values()) {
+            if (parameter.option.equals(option)) {
+                return parameter;
+            }
+        }
+        throw new IllegalArgumentException("Unknown setting " + option);
+    }
+}
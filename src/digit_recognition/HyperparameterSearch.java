@@ -0,0 +1,537 @@
+package digit_recognition;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+/**
+ * Class searching for the best settings of a classifier. Every configuration
+ * is scored by cross-validation, and the folds of all the configurations are
+ * trained at the same time on one bounded pool of threads, reading a single
+ * shared copy of the rows.
+ *
+ * Networks are searched with successive halving: every configuration first
+ * trains for a small share of its epochs, and only the best third of them
+ * carries on training for a bigger share, until the last ones train for all
+ * their epochs. The networks resume where they stopped, so no epoch is trained
+ * twice.
+ */
+public class HyperparameterSearch {
+    // Constants for the search
+    static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+    // One configuration in this many is kept after every rung of successive halving
+    static final int HALVING_RATE = 3;
+    // Most configurations printed once the search is done, the file holds all of them
+    private static final int PRINTED_CONFIGURATIONS = 10;
+
+    private final CrossValidation validation;
+    private final Algorithm algorithm;
+    private final int threads;
+
+    /**
+     * Constructor for the search.
+     *
+     * @param validation the folds every configuration is scored on
+     * @param algorithm  the classifier
+     * @param threads    the number of folds trained at the same time
+     */
+    public HyperparameterSearch(CrossValidation validation, Algorithm algorithm, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.validation = validation;
+        this.algorithm = algorithm;
+        this.threads = threads;
+    }
+
+    /**
+     * Scores every configuration and ranks them, the best first. Pruned
+     * configurations are ranked after the ones that went further.
+     *
+     * @param configurations the configurations, each holding a value for every
+     *                       setting in the order of the settings
+     * @param halving        whether to prune configurations with successive
+     *                       halving, which only applies to networks
+     * @return the ranked configurations
+     */
+    public List<Trial> search(List<double[]> configurations, boolean halving) {
+        List<Trial> trials = new ArrayList<>();
+        for (double[] values : configurations) {
+            trials.add(new Trial(trials.size(), values, validation.getFoldCount()));
+        }
+        List<Trial> remaining = new ArrayList<>(trials);
+        int rungs = halving && algorithm == Algorithm.MULTI_LAYER_PERCEPTRON ? countRungs(trials.size()) : 1;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int rung = 0; rung < rungs; rung++) {
+                // Every configuration trains for its share of its own epochs, the last rung for all of them
+                double share = Math.pow(HALVING_RATE, rung - (rungs - 1));
+                long startTime = System.nanoTime();
+                List<List<Future<CrossValidation.FoldResult>>> pending = new ArrayList<>();
+                int[] epochs = new int[remaining.size()];
+                for (int index = 0; index < remaining.size(); index++) {
+                    Trial trial = remaining.get(index);
+                    CrossValidation.FoldEvaluator evaluator = trial::classify;
+                    if (algorithm == Algorithm.MULTI_LAYER_PERCEPTRON) {
+                        int target = Math.max(1, (int) Math.ceil(trial.getValue(Hyperparameter.EPOCHS) * share));
+                        evaluator = (fold, foldThreads) -> trial.train(fold, target);
+                        epochs[index] = target;
+                    }
+                    pending.add(validation.submit(evaluator, executor, 1));
+                }
+                for (int index = 0; index < remaining.size(); index++) {
+                    remaining.get(index).record(CrossValidation.collect(pending.get(index), startTime), rung,
+                            epochs[index]);
+                }
+                remaining.sort(Trial.RANKING);
+                System.out.printf("Rung %d of %d: %d configuration(s) scored in %.2f s, best accuracy %.5f%n",
+                        rung + 1, rungs, remaining.size(), (System.nanoTime() - startTime) / 1e9,
+                        remaining.get(0).getMeanAccuracy());
+                if (rung < rungs - 1) {
+                    int kept = (remaining.size() + HALVING_RATE - 1) / HALVING_RATE;
+                    for (Trial pruned : remaining.subList(kept, remaining.size())) {
+                        pruned.release();
+                    }
+                    remaining = new ArrayList<>(remaining.subList(0, kept));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (Trial trial : remaining) {
+            trial.release();
+        }
+        trials.sort(Trial.RANKING);
+        return trials;
+    }
+
+    /**
+     * Counts the rungs of successive halving, so that the last rung keeps fewer
+     * configurations than the halving rate.
+     *
+     * @param configurations the number of configurations
+     * @return the number of rungs
+     */
+    static int countRungs(int configurations) {
+        int rungs = 1;
+        for (int remaining = configurations; remaining >= HALVING_RATE; remaining = (remaining + HALVING_RATE - 1)
+                / HALVING_RATE) {
+            rungs++;
+        }
+        return rungs;
+    }
+
+    /**
+     * Builds every combination of the values of the settings.
+     *
+     * @param values the values of every searched setting, the other settings
+     *               keeping the values of the application
+     * @return the configurations
+     */
+    public static List<double[]> grid(Map<Hyperparameter, double[]> values) {
+        long total = countConfigurations(values);
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The grid holds too many configurations: " + total);
+        }
+        List<double[]> configurations = new ArrayList<>();
+        for (long index = 0; index < total; index++) {
+            configurations.add(configuration(values, index));
+        }
+        return configurations;
+    }
+
+    /**
+     * Draws distinct combinations of the values of the settings at random, or
+     * all of them if there are not more than the number asked for.
+     *
+     * @param values the values of every searched setting, the other settings
+     *               keeping the values of the application
+     * @param count  the number of configurations
+     * @param seed   the seed of the draw
+     * @return the configurations
+     */
+    public static List<double[]> sample(Map<Hyperparameter, double[]> values, int count, long seed) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one configuration must be drawn");
+        }
+        long total = countConfigurations(values);
+        if (count >= total) {
+            return grid(values);
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        Set<Long> drawn = new HashSet<>();
+        List<double[]> configurations = new ArrayList<>();
+        while (configurations.size() < count) {
+            long index = random.nextLong(total);
+            if (drawn.add(index)) {
+                configurations.add(configuration(values, index));
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Counts the combinations of the values of the settings.
+     *
+     * @param values the values of every searched setting
+     * @return the number of combinations
+     */
+    private static long countConfigurations(Map<Hyperparameter, double[]> values) {
+        long total = 1;
+        for (double[] options : values.values()) {
+            if (options.length == 0) {
+                throw new IllegalArgumentException("Every searched setting needs at least one value");
+            }
+            total = Math.multiplyExact(total, options.length);
+        }
+        return total;
+    }
+
+    /**
+     * Builds the combination at a position of the grid, the first setting
+     * changing the fastest.
+     *
+     * @param values the values of every searched setting
+     * @param index  the position of the combination
+     * @return the configuration, holding a value for every setting
+     */
+    private static double[] configuration(Map<Hyperparameter, double[]> values, long index) {
+        double[] configuration = new double[Hyperparameter.values().length];
+        for (Hyperparameter parameter : Hyperparameter.values()) {
+            double[] options = values.get(parameter);
+            if (options == null) {
+                configuration[parameter.ordinal()] = parameter.getDefaultValue();
+            } else {
+                configuration[parameter.ordinal()] = options[(int) (index % options.length)];
+                index /= options.length;
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Gets the values searched for a setting when none are given.
+     *
+     * @param parameter the setting
+     * @return the values
+     */
+    static double[] defaultSearchValues(Hyperparameter parameter) {
+        switch (parameter) {
+            case LEARNING_RATE:
+                return new double[] { 0.05, 0.1, 0.2 };
+            case BATCH_SIZE:
+                return new double[] { 16, 33, 64 };
+            case FIRST_HIDDEN_LAYER:
+                return new double[] { 31, 64 };
+            case SECOND_HIDDEN_LAYER:
+                return new double[] { 10, 32 };
+            case K:
+                return new double[] { 1, 3, 5, 7, 9 };
+            default:
+                return new double[] { parameter.getDefaultValue() };
+        }
+    }
+
+    /**
+     * Writes the ranked configurations as CSV, one line per configuration.
+     *
+     * @param trials    the ranked configurations
+     * @param algorithm the classifier
+     * @param filePath  the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(List<Trial> trials, Algorithm algorithm, String filePath) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(filePath)))) {
+            StringBuilder header = new StringBuilder("rank");
+            for (Hyperparameter parameter : Hyperparameter.values()) {
+                if (parameter.getAlgorithm() == algorithm) {
+                    header.append(',').append(parameter.getOption());
+                }
+            }
+            writer.println(header.append(",epochsTrained,rungs,meanAccuracy,accuracyDeviation,trainingAccuracy,"
+                    + "foldSeconds"));
+            for (int rank = 0; rank < trials.size(); rank++) {
+                Trial trial = trials.get(rank);
+                StringBuilder line = new StringBuilder().append(rank + 1);
+                for (Hyperparameter parameter : Hyperparameter.values()) {
+                    if (parameter.getAlgorithm() == algorithm) {
+                        line.append(',').append(parameter.format(trial.getValue(parameter)));
+                    }
+                }
+                writer.println(line.append(',').append(trial.getEpochsTrained()).append(',')
+                        .append(trial.getRungs()).append(',').append(trial.getMeanAccuracy()).append(',')
+                        .append(trial.getAccuracyDeviation()).append(',').append(trial.getTrainingAccuracy())
+                        .append(',').append(String.format("%.3f", trial.getFoldNanos() / 1e9)));
+            }
+            if (writer.checkError()) {
+                throw new IOException("Error when writing " + filePath);
+            }
+        }
+    }
+
+    /**
+     * Runs a search from the command line and writes the ranked configurations.
+     *
+     * @param args the classifier (mlp or knn), grid or random=N, the number of
+     *             folds, the results file and the datasets, optionally followed
+     *             by the values to search as --setting=value,value and by
+     *             --no-halving
+     */
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        List<String> options = new ArrayList<>();
+        for (String arg : args) {
+            (arg.startsWith("--") ? options : positional).add(arg);
+        }
+        if (positional.size() < 5 || !(positional.get(0).equals("mlp") || positional.get(0).equals("knn"))
+                || !(positional.get(1).equals("grid") || positional.get(1).startsWith("random="))) {
+            System.out.println("Usage: java digit_recognition.HyperparameterSearch <mlp|knn> <grid|random=N> "
+                    + "<folds> <results.csv> <dataset> [dataset...] [--setting=value,value...] [--no-halving]");
+            return;
+        }
+        try {
+            Algorithm algorithm = positional.get(0).equals("mlp") ? Algorithm.MULTI_LAYER_PERCEPTRON
+                    : Algorithm.K_NEAREST_NEIGHBOURS;
+            boolean halving = true;
+            Map<Hyperparameter, double[]> values = new EnumMap<>(Hyperparameter.class);
+            for (Hyperparameter parameter : Hyperparameter.values()) {
+                if (parameter.getAlgorithm() == algorithm) {
+                    values.put(parameter, defaultSearchValues(parameter));
+                }
+            }
+            for (String option : options) {
+                if (option.equals("--no-halving")) {
+                    halving = false;
+                    continue;
+                }
+                int equals = option.indexOf('=');
+                Hyperparameter parameter = Hyperparameter.forOption(
+                        equals < 0 ? option.substring(2) : option.substring(2, equals));
+                if (equals < 0 || parameter.getAlgorithm() != algorithm) {
+                    throw new IllegalArgumentException("Cannot search " + option);
+                }
+                String[] texts = option.substring(equals + 1).split(",");
+                double[] parsed = new double[texts.length];
+                for (int index = 0; index < texts.length; index++) {
+                    parsed[index] = parameter.parse(texts[index]);
+                }
+                values.put(parameter, parsed);
+            }
+            List<double[]> configurations = positional.get(1).equals("grid") ? grid(values)
+                    : sample(values, Integer.parseInt(positional.get(1).substring("random=".length())),
+                            MultiLayerPerceptron.RANDOM_SEED);
+
+            List<String> datasetPaths = positional.subList(4, positional.size());
+            int[][][] datasets = new int[datasetPaths.size()][][];
+            for (int index = 0; index < datasets.length; index++) {
+                datasets[index] = DatasetReader.readDataset(datasetPaths.get(index));
+            }
+            List<int[]> rows = new ArrayList<>();
+            for (int[][] dataset : datasets) {
+                rows.addAll(List.of(dataset));
+            }
+            CrossValidation validation = new CrossValidation(rows.toArray(new int[0][]),
+                    Integer.parseInt(positional.get(2)), MultiLayerPerceptron.RANDOM_SEED);
+
+            System.out.printf("Searching %d configuration(s) of %s over %d folds on %d thread(s)...%n",
+                    configurations.size(), algorithm, validation.getFoldCount(), SEARCH_THREADS);
+            long startTime = System.nanoTime();
+            List<Trial> ranked = new HyperparameterSearch(validation, algorithm, SEARCH_THREADS)
+                    .search(configurations, halving);
+            System.out.printf("Search took %.2f s%n%n", (System.nanoTime() - startTime) / 1e9);
+            printRanking(ranked, algorithm);
+            write(ranked, algorithm, positional.get(3));
+            System.out.println("Ranked configurations written to " + positional.get(3));
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage() + ". Please provide a valid path to the dataset.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid input: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error when writing the results: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the best configurations as a table.
+     *
+     * @param trials    the ranked configurations
+     * @param algorithm the classifier
+     */
+    private static void printRanking(List<Trial> trials, Algorithm algorithm) {
+        StringBuilder header = new StringBuilder(String.format("%-6s", "Rank"));
+        for (Hyperparameter parameter : Hyperparameter.values()) {
+            if (parameter.getAlgorithm() == algorithm) {
+                header.append(String.format("%14s", parameter.getOption()));
+            }
+        }
+        System.out.println(header.append(String.format("%10s%12s%12s", "Epochs", "Accuracy", "Deviation")));
+        for (int rank = 0; rank < Math.min(PRINTED_CONFIGURATIONS, trials.size()); rank++) {
+            Trial trial = trials.get(rank);
+            StringBuilder line = new StringBuilder(String.format("%-6d", rank + 1));
+            for (Hyperparameter parameter : Hyperparameter.values()) {
+                if (parameter.getAlgorithm() == algorithm) {
+                    line.append(String.format("%14s", parameter.format(trial.getValue(parameter))));
+                }
+            }
+            System.out.println(line.append(String.format("%10d%12.5f%12.5f", trial.getEpochsTrained(),
+                    trial.getMeanAccuracy(), trial.getAccuracyDeviation())));
+        }
+        System.out.println();
+    }
+
+    /**
+     * Class holding one configuration, its networks while it is being searched
+     * and its latest scores.
+     */
+    public static final class Trial {
+        // Configurations that went further first, then the best accuracy, then the order given
+        static final Comparator<Trial> RANKING = Comparator.comparingInt((Trial trial) -> -trial.rungs)
+                .thenComparing(Comparator.comparingDouble(Trial::getMeanAccuracy).reversed())
+                .thenComparingInt(trial -> trial.index);
+
+        private final int index;
+        private final double[] values;
+        // Network of every fold, kept between the rungs so training can resume
+        private NetworkBase[] networks;
+        private int epochsTrained;
+        private int rungs;
+        private double meanAccuracy = Double.NaN;
+        private double accuracyDeviation = Double.NaN;
+        private double trainingAccuracy = Double.NaN;
+        private long foldNanos;
+
+        // Constructor
+        Trial(int index, double[] values, int folds) {
+            this.index = index;
+            this.values = values.clone();
+            this.networks = new NetworkBase[folds];
+        }
+
+        // Trains the network of a fold up to the given epochs and scores it, called once per fold and rung
+        double[] train(CrossValidation.Fold fold, int epochs) {
+            NetworkBase network = networks[fold.getIndex()];
+            if (network == null) {
+                network = MultiLayerPerceptron.createNetwork((int) getValue(Hyperparameter.FIRST_HIDDEN_LAYER),
+                        (int) getValue(Hyperparameter.SECOND_HIDDEN_LAYER));
+                network.setVerbose(false);
+                network.setLearningRate(getValue(Hyperparameter.LEARNING_RATE));
+                // The schedule spans all the epochs of the configuration, whichever rung the network stops at
+                network.setLearningRateSchedule(MultiLayerPerceptron.LEARNING_RATE_SCHEDULE,
+                        (int) getValue(Hyperparameter.EPOCHS));
+                networks[fold.getIndex()] = network;
+            }
+            double training = network.train(fold.trainingSet(), epochs - epochsTrained,
+                    (int) getValue(Hyperparameter.LOOPS), (int) getValue(Hyperparameter.BATCH_SIZE),
+                    CrossValidation.FOLD_TRAINING_MODE);
+            return new double[] { training, network.evaluate(fold.testingSet()) };
+        }
+
+        // Scores the k-nearest neighbours on a fold, which have nothing to train
+        double[] classify(CrossValidation.Fold fold, int threads) {
+            ToIntFunction<double[]> classifier = KNearestNeighbours.createClassifier(fold.trainingFeatures(),
+                    fold.trainingLabels(), (int) getValue(Hyperparameter.K), KNearestNeighbours.NEIGHBOUR_SEARCH,
+                    KNearestNeighbours.DISTANCE_METRIC);
+            double[][] testingFeatures = fold.testingFeatures();
+            int correct = KNearestNeighbours.countCorrectPredictions(classifier, testingFeatures,
+                    fold.testingLabels(), threads);
+            return new double[] { Double.NaN, (double) correct / testingFeatures.length };
+        }
+
+        // Keeps the scores of a rung once all its folds are done, with the epochs they were trained to
+        void record(CrossValidation.Result result, int rung, int epochs) {
+            rungs = rung + 1;
+            meanAccuracy = result.getMeanTestingAccuracy();
+            accuracyDeviation = result.getTestingAccuracyDeviation();
+            trainingAccuracy = result.getMeanTrainingAccuracy();
+            for (CrossValidation.FoldResult fold : result.getFolds()) {
+                foldNanos += fold.getElapsedNanos();
+            }
+            epochsTrained = epochs;
+        }
+
+        // Frees the networks once the configuration is pruned or done
+        void release() {
+            networks = null;
+        }
+
+        /**
+         * Gets the value of a setting in this configuration.
+         *
+         * @param parameter the setting
+         * @return the value
+         */
+        public double getValue(Hyperparameter parameter) {
+            return values[parameter.ordinal()];
+        }
+
+        /**
+         * Gets the epochs the networks of this configuration were trained for.
+         *
+         * @return the epochs trained, zero for the k-nearest neighbours
+         */
+        public int getEpochsTrained() {
+            return epochsTrained;
+        }
+
+        /**
+         * Gets the number of rungs this configuration went through.
+         *
+         * @return the number of rungs
+         */
+        public int getRungs() {
+            return rungs;
+        }
+
+        /**
+         * Gets the mean testing accuracy over the folds at the last rung.
+         *
+         * @return the mean accuracy
+         */
+        public double getMeanAccuracy() {
+            return meanAccuracy;
+        }
+
+        /**
+         * Gets the standard deviation of the testing accuracies over the folds at
+         * the last rung.
+         *
+         * @return the standard deviation
+         */
+        public double getAccuracyDeviation() {
+            return accuracyDeviation;
+        }
+
+        /**
+         * Gets the mean training accuracy over the folds at the last rung.
+         *
+         * @return the training accuracy, or not a number for the k-nearest
+         *         neighbours
+         */
+        public double getTrainingAccuracy() {
+            return trainingAccuracy;
+        }
+
+        /**
+         * Gets the time spent on the folds of this configuration over every rung.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getFoldNanos() {
+            return foldNanos;
+        }
+    }
+}
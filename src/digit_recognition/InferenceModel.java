@@ -0,0 +1,297 @@
+package digit_recognition;
+
+import java.util.Arrays;
+
+/**
+ * Class holding an immutable copy of the parameters of a trained network,
+ * used to classify inputs from any number of threads at once. The activations
+ * are written to scratch buffers owned by the caller, or by the calling thread
+ * when none is given, so concurrent calls never share state. Only the outputs
+ * are computed; the derivatives needed for training are not.
+ *
+ * The arithmetic is the same as in {@link NetworkBase#forward(double[])}, so
+ * both give exactly the same outputs. Training the network after taking the
+ * snapshot does not change the snapshot.
+ */
+public final class InferenceModel {
+    private final int[] layerSizes;
+    private final int networkSize;
+    private final Precision precision;
+    // Activation function of every layer after the input
+    private final Activation[] activations;
+    // Parameters of the network in its precision, the arrays of the other precision are null
+    private final double[][] weights;
+    private final double[][] bias;
+    private final float[][] floatWeights;
+    private final float[][] floatBias;
+
+    // Buffers of the calls made without a scratch, one set per thread
+    private final ThreadLocal<Scratch> threadScratch = ThreadLocal.withInitial(this::newScratch);
+
+    /**
+     * Constructor for a model in double precision, copying the parameters.
+     *
+     * @param layerSizes  the network layer sizes
+     * @param activations the activation function of every layer after the
+     *                    input
+     * @param weights     the weights of every layer, one row per neuron
+     * @param bias        the biases of every layer
+     */
+    InferenceModel(int[] layerSizes, Activation[] activations, double[][] weights, double[][] bias) {
+        this.layerSizes = layerSizes.clone();
+        this.networkSize = layerSizes.length;
+        this.precision = Precision.DOUBLE;
+        this.activations = activations.clone();
+        this.weights = new double[networkSize][];
+        this.bias = new double[networkSize][];
+        for (int layer = 1; layer < networkSize; layer++) {
+            this.weights[layer] = weights[layer].clone();
+            this.bias[layer] = bias[layer].clone();
+        }
+        this.floatWeights = null;
+        this.floatBias = null;
+    }
+
+    /**
+     * Constructor for a model in single precision, copying the parameters.
+     *
+     * @param layerSizes  the network layer sizes
+     * @param activations the activation function of every layer after the
+     *                    input
+     * @param weights     the weights of every layer, one row per neuron
+     * @param bias        the biases of every layer
+     */
+    InferenceModel(int[] layerSizes, Activation[] activations, float[][] weights, float[][] bias) {
+        this.layerSizes = layerSizes.clone();
+        this.networkSize = layerSizes.length;
+        this.precision = Precision.FLOAT;
+        this.activations = activations.clone();
+        this.floatWeights = new float[networkSize][];
+        this.floatBias = new float[networkSize][];
+        for (int layer = 1; layer < networkSize; layer++) {
+            this.floatWeights[layer] = weights[layer].clone();
+            this.floatBias[layer] = bias[layer].clone();
+        }
+        this.weights = null;
+        this.bias = null;
+    }
+
+    /**
+     * Creates scratch buffers for this model. A scratch must only be used by
+     * one thread at a time.
+     *
+     * @return the scratch buffers
+     */
+    public Scratch newScratch() {
+        return new Scratch(layerSizes, precision);
+    }
+
+    /**
+     * Performs a forward pass through the network.
+     *
+     * @param input   the input
+     * @param scratch the scratch buffers of the caller
+     * @return the output of the last layer, held by the scratch until its next
+     *         use
+     */
+    public double[] forward(double[] input, Scratch scratch) {
+        if (input.length != layerSizes[0]) {
+            throw new IllegalArgumentException("The input must have " + layerSizes[0] + " values");
+        }
+        // A scratch of another model with the same layer sizes fits, whatever model it was made for
+        if (!Arrays.equals(scratch.layerSizes, layerSizes) || scratch.precision != precision) {
+            throw new IllegalArgumentException("The scratch was not made for this model");
+        }
+        if (floatWeights != null) {
+            return forwardFloat(input, scratch);
+        }
+        // The input is read in place, the activations of every other layer go to the scratch
+        double[] previous = input;
+        for (int layer = 1; layer < networkSize; layer++) {
+            int previousSize = layerSizes[layer - 1];
+            double[] layerOutput = scratch.output[layer];
+            for (int neuron = 0; neuron < layerSizes[layer]; neuron++) {
+                double sum = VectorKernels.dot(weights[layer], neuron * previousSize, previous, 0, previousSize);
+                layerOutput[neuron] = sum + bias[layer][neuron];
+            }
+            activations[layer].activate(layerOutput, 0, layerSizes[layer]);
+            previous = layerOutput;
+        }
+        return previous;
+    }
+
+    /**
+     * Classifies an input.
+     *
+     * @param input   the input
+     * @param scratch the scratch buffers of the caller
+     * @return the predicted label
+     */
+    public int classify(double[] input, Scratch scratch) {
+        return Utility.returnIndexOfHighestValue(forward(input, scratch));
+    }
+
+    /**
+     * Classifies an input using the scratch buffers of the calling thread.
+     *
+     * @param input the input
+     * @return the predicted label
+     */
+    public int classify(double[] input) {
+        return classify(input, threadScratch.get());
+    }
+
+    /**
+     * Classifies a batch of inputs using the scratch buffers of the calling
+     * thread. In double precision the whole batch goes through the network as
+     * one matrix product per layer.
+     *
+     * @param inputs the inputs, one per row
+     * @param count  the number of inputs to classify from the start of the array
+     * @param labels the array receiving the predicted labels
+     */
+    public void classify(double[][] inputs, int count, int[] labels) {
+        Scratch scratch = threadScratch.get();
+        if (floatWeights != null) {
+            for (int sample = 0; sample < count; sample++) {
+                labels[sample] = classify(inputs[sample], scratch);
+            }
+            return;
+        }
+        double[][] batchOutput = scratch.ensureBatchCapacity(count);
+        // Copies the inputs into the rows of the input layer
+        for (int sample = 0; sample < count; sample++) {
+            if (inputs[sample].length != layerSizes[0]) {
+                throw new IllegalArgumentException("The input must have " + layerSizes[0] + " values");
+            }
+            System.arraycopy(inputs[sample], 0, batchOutput[0], sample * layerSizes[0], layerSizes[0]);
+        }
+        for (int layer = 1; layer < networkSize; layer++) {
+            int layerSize = layerSizes[layer];
+            double[] layerOutput = batchOutput[layer];
+            // Computes the weighted sums of every sample and neuron in one product
+            VectorKernels.multiplyTransposed(batchOutput[layer - 1], weights[layer], layerOutput, count, layerSize,
+                    layerSizes[layer - 1]);
+            for (int sample = 0; sample < count; sample++) {
+                for (int neuron = 0; neuron < layerSize; neuron++) {
+                    layerOutput[sample * layerSize + neuron] += bias[layer][neuron];
+                }
+                activations[layer].activate(layerOutput, sample * layerSize, layerSize);
+            }
+        }
+        // Picks the most active output neuron of every sample
+        double[] last = batchOutput[networkSize - 1];
+        int outputSize = layerSizes[networkSize - 1];
+        for (int sample = 0; sample < count; sample++) {
+            int first = sample * outputSize;
+            int best = 0;
+            for (int neuron = 1; neuron < outputSize; neuron++) {
+                if (last[first + neuron] > last[first + best]) {
+                    best = neuron;
+                }
+            }
+            labels[sample] = best;
+        }
+    }
+
+    /**
+     * Gets the number of inputs of the network.
+     *
+     * @return the input size
+     */
+    public int getInputSize() {
+        return layerSizes[0];
+    }
+
+    /**
+     * Gets the number of outputs of the network.
+     *
+     * @return the output size
+     */
+    public int getOutputSize() {
+        return layerSizes[networkSize - 1];
+    }
+
+    /**
+     * Gets the precision of the parameters.
+     *
+     * @return the precision
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Performs a forward pass in single precision.
+     *
+     * @param input   the input
+     * @param scratch the scratch buffers of the caller
+     * @return the output of the last layer
+     */
+    private double[] forwardFloat(double[] input, Scratch scratch) {
+        float[] previous = scratch.floatOutput[0];
+        for (int index = 0; index < layerSizes[0]; index++) {
+            previous[index] = (float) input[index];
+        }
+        for (int layer = 1; layer < networkSize; layer++) {
+            int previousSize = layerSizes[layer - 1];
+            float[] layerOutput = scratch.floatOutput[layer];
+            for (int neuron = 0; neuron < layerSizes[layer]; neuron++) {
+                layerOutput[neuron] = VectorKernels.dot(floatWeights[layer], neuron * previousSize, previous, 0,
+                        previousSize) + floatBias[layer][neuron];
+            }
+            activations[layer].activate(layerOutput, 0, layerSizes[layer]);
+            for (int neuron = 0; neuron < layerSizes[layer]; neuron++) {
+                // Saturated outputs are flushed to zero like in the trained network
+                float value = layerOutput[neuron];
+                layerOutput[neuron] = Math.abs(value) < Float.MIN_NORMAL ? 0f : value;
+            }
+            previous = layerOutput;
+        }
+        double[] result = scratch.output[networkSize - 1];
+        for (int neuron = 0; neuron < previous.length; neuron++) {
+            result[neuron] = previous[neuron];
+        }
+        return result;
+    }
+
+    /**
+     * Class holding the activations of one caller. The buffers of the batched
+     * pass grow with the largest batch classified.
+     */
+    public static final class Scratch {
+        private final int[] layerSizes;
+        private final Precision precision;
+        private final double[][] output;
+        private final float[][] floatOutput;
+        private double[][] batchOutput;
+        private int batchCapacity;
+
+        // Constructor for the Scratch class
+        private Scratch(int[] layerSizes, Precision precision) {
+            this.layerSizes = layerSizes;
+            this.precision = precision;
+            this.output = new double[layerSizes.length][];
+            this.floatOutput = precision == Precision.FLOAT ? new float[layerSizes.length][] : null;
+            for (int layer = 0; layer < layerSizes.length; layer++) {
+                // The double input layer is never written, the input is read in place
+                output[layer] = new double[layer == 0 ? 0 : layerSizes[layer]];
+                if (floatOutput != null) {
+                    floatOutput[layer] = new float[layerSizes[layer]];
+                }
+            }
+        }
+
+        // Makes sure the batched buffers hold a number of samples and returns them
+        private double[][] ensureBatchCapacity(int batchSize) {
+            if (batchSize > batchCapacity) {
+                batchOutput = new double[layerSizes.length][];
+                for (int layer = 0; layer < layerSizes.length; layer++) {
+                    batchOutput[layer] = new double[batchSize * layerSizes[layer]];
+                }
+                batchCapacity = batchSize;
+            }
+            return batchOutput;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package digit_recognition;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Class serving digit predictions over HTTP to processes on the same machine.
+ * Every request is a POST whose body holds one or more feature vectors, one per
+ * line with 64 comma separated values, and the response holds the predicted
+ * digits, one per line:
+ *
+ * <pre>
+ * POST /predict/mlp   classified by the multi-layer perceptron
+ * POST /predict/knn   classified by the k-nearest neighbours
+ * GET  /stats         requests served and average batch size of each classifier
+ * </pre>
+ *
+ * The vectors of concurrent requests are grouped into batches by a
+ * {@link MicroBatcher} for each classifier.
+ */
+public class InferenceServer {
+    // Constants for the server
+    static final int DEFAULT_PORT = 8080;
+    static final int DEFAULT_LATENCY_BUDGET_MICROS = 1000;
+    static final int MAX_BATCH_SIZE = 64;
+    // Handlers wait for their batch to be classified, so there must be one for every
+    // request in flight
+    static final int HANDLER_THREADS = 64;
+    private static final int MAX_REQUEST_BYTES = 1 << 20;
+
+    static {
+        // Small responses otherwise wait for the delayed acknowledgement of the client,
+        // adding 40 ms to every request. The setting is read when the first server is made.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final MicroBatcher networkBatcher;
+    private final MicroBatcher neighboursBatcher;
+
+    /**
+     * Constructor for the InferenceServer class. The server only listens on the
+     * loopback address and does not accept requests before it is started.
+     *
+     * @param network            the trained network
+     * @param trainingDataset    the training dataset of the k-nearest neighbours
+     * @param port               the port to listen on, 0 for any free port
+     * @param latencyBudgetNanos the longest time a vector waits for others to
+     *                           fill its batch, in nanoseconds
+     * @throws IOException if the server cannot listen on the port
+     */
+    public InferenceServer(NetworkBase network, int[][] trainingDataset, int port, long latencyBudgetNanos)
+            throws IOException {
+        if (network.INPUT_LAYER_SIZE != DatasetReader.SINGLE_INPUT_SIZE - 1) {
+            throw new IllegalArgumentException("The network must take " + (DatasetReader.SINGLE_INPUT_SIZE - 1)
+                    + " inputs");
+        }
+        ToIntFunction<double[]> neighbours = KNearestNeighbours.createClassifier(trainingDataset);
+        networkBatcher = new MicroBatcher("mlp-batcher", network.snapshot()::classify, MAX_BATCH_SIZE,
+                latencyBudgetNanos);
+        neighboursBatcher = new MicroBatcher("knn-batcher", (inputs, count, predicted) -> {
+            for (int index = 0; index < count; index++) {
+                predicted[index] = neighbours.applyAsInt(inputs[index]);
+            }
+        }, MAX_BATCH_SIZE, latencyBudgetNanos);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Java 17 has no virtual threads, so the blocked handlers run on a fixed pool
+        handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+        server.setExecutor(handlers);
+        server.createContext("/predict/mlp", exchange -> handlePrediction(exchange, networkBatcher));
+        server.createContext("/predict/knn", exchange -> handlePrediction(exchange, neighboursBatcher));
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Starts the server, loading or training the network first.
+     *
+     * @param args the training dataset, then optionally the model file, the port
+     *             and the latency budget in microseconds
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java digit_recognition.InferenceServer <training> [modelFile] [port] "
+                    + "[latencyBudgetMicros]");
+            return;
+        }
+        String modelPath = args.length > 1 ? args[1] : null;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+        int latencyBudget = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_LATENCY_BUDGET_MICROS;
+        try {
+            int[][] trainingDataset = DatasetReader.readDataset(args[0]);
+            // Trains the network unless it was saved before
+            NetworkBase network = MultiLayerPerceptron.loadNetwork(modelPath);
+            if (network == null) {
+                network = MultiLayerPerceptron.createNetwork();
+                System.out.println("Training neural network...");
+                network.train(MultiLayerPerceptron.createSet(trainingDataset),
+                        MultiLayerPerceptron.TRAINING_EPOCHS_VALUE, MultiLayerPerceptron.TRAINING_LOOPS_VALUE,
+                        MultiLayerPerceptron.TRAINING_BATCH_SIZE);
+                MultiLayerPerceptron.saveNetwork(network, modelPath);
+            }
+
+            InferenceServer server = new InferenceServer(network, trainingDataset, port,
+                    TimeUnit.MICROSECONDS.toNanos(latencyBudget));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+            System.out.printf("Serving predictions on http://localhost:%d with a latency budget of %d us%n",
+                    server.getPort(), latencyBudget);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage() + ". Please provide a valid path to the dataset.");
+        } catch (IOException e) {
+            System.out.println("Error when starting the server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits for the requests in flight to finish.
+     */
+    public void stop() {
+        server.stop(1);
+        handlers.shutdown();
+        networkBatcher.close();
+        neighboursBatcher.close();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles a prediction request, answering once every vector of the request
+     * has been classified.
+     *
+     * @param exchange the request and its response
+     * @param batcher  the batcher of the classifier
+     * @throws IOException if the response cannot be sent
+     */
+    private void handlePrediction(HttpExchange exchange, MicroBatcher batcher) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, 405, "Predictions need a POST request\n");
+                return;
+            }
+            List<double[]> vectors;
+            try {
+                vectors = parseVectors(readBody(exchange.getRequestBody()));
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+            List<CompletableFuture<Integer>> predictions = new ArrayList<>(vectors.size());
+            for (double[] vector : vectors) {
+                predictions.add(batcher.submit(vector));
+            }
+            StringBuilder response = new StringBuilder(vectors.size() * 2);
+            try {
+                for (CompletableFuture<Integer> prediction : predictions) {
+                    response.append(prediction.join()).append('\n');
+                }
+            } catch (CompletionException e) {
+                sendText(exchange, 503, "Prediction failed: " + e.getCause().getMessage() + "\n");
+                return;
+            }
+            sendText(exchange, 200, response.toString());
+        }
+    }
+
+    /**
+     * Handles a request for the statistics of the classifiers.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String stats = String.format("mlp requests=%d averageBatch=%.2f%nknn requests=%d averageBatch=%.2f%n",
+                    networkBatcher.getRequestCount(), networkBatcher.getAverageBatchSize(),
+                    neighboursBatcher.getRequestCount(), neighboursBatcher.getAverageBatchSize());
+            sendText(exchange, 200, stats);
+        }
+    }
+
+    /**
+     * Reads the body of a request.
+     *
+     * @param body the body of the request
+     * @return the body as text
+     * @throws IOException if the body cannot be read
+     */
+    private static String readBody(InputStream body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = body.read(buffer)) >= 0) {
+            if (bytes.size() + read > MAX_REQUEST_BYTES) {
+                throw new IllegalArgumentException("Requests are limited to " + MAX_REQUEST_BYTES + " bytes");
+            }
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the feature vectors of a request, one per non empty line.
+     *
+     * @param body the body of the request
+     * @return the feature vectors
+     */
+    private static List<double[]> parseVectors(String body) {
+        int featureCount = DatasetReader.SINGLE_INPUT_SIZE - 1;
+        List<double[]> vectors = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] values = line.split(",");
+            if (values.length != featureCount) {
+                throw new IllegalArgumentException("Line " + (vectors.size() + 1) + " has " + values.length
+                        + " values instead of " + featureCount);
+            }
+            double[] vector = new double[featureCount];
+            for (int feature = 0; feature < featureCount; feature++) {
+                try {
+                    vector[feature] = Double.parseDouble(values[feature].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value '" + values[feature].trim() + "' on line "
+                            + (vectors.size() + 1));
+                }
+                if (!Double.isFinite(vector[feature])) {
+                    throw new IllegalArgumentException("Values must be finite, found " + values[feature].trim());
+                }
+            }
+            vectors.add(vector);
+        }
+        if (vectors.isEmpty()) {
+            throw new IllegalArgumentException("The request holds no feature vector");
+        }
+        return vectors;
+    }
+
+    /**
+     * Sends a text response.
+     *
+     * @param exchange the request and its response
+     * @param status   the status code
+     * @param text     the body of the response
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+}
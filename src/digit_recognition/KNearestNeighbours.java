@@ -1,8 +1,13 @@
 package digit_recognition;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
 
 /**
  * Class responsible for the k-nearest neighbours algorithm.
@@ -10,7 +15,16 @@ import java.util.PriorityQueue;
 public class KNearestNeighbours {
     // Constants
     private static final int INPUT_FEATURES_SIZE = 64;
-    private static final int K = 3;
+    static final int K = 3;
+    private static final int LABEL_COUNT = 10;
+    // The k-d tree only pays off past roughly ten thousand training rows
+    static final NeighbourSearch NEIGHBOUR_SEARCH = NeighbourSearch.BRUTE_FORCE;
+    static final DistanceMetric DISTANCE_METRIC = DistanceMetric.EUCLIDEAN;
+    static final int EVALUATION_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Query buffers reused by every classification made on the same thread
+    private static final ThreadLocal<NeighbourScratch> SCRATCH = ThreadLocal
+            .withInitial(() -> new NeighbourScratch(LABEL_COUNT));
 
     /**
      * Executes the k-nearest neighbours algorithm.
@@ -32,7 +46,8 @@ public class KNearestNeighbours {
         // Evaluate the accuracy using the k-nearest neighbours algorithm
         double accuracy = evaluateAccuracyUsingKNearestNeighbours(trainingDatasetExtracted.features,
                 trainingDatasetExtracted.labels,
-                testingDatasetExtracted.features, testingDatasetExtracted.labels, K);
+                testingDatasetExtracted.features, testingDatasetExtracted.labels, K, EVALUATION_THREADS,
+                NEIGHBOUR_SEARCH, DISTANCE_METRIC);
 
         return accuracy;
     }
@@ -77,76 +92,259 @@ public class KNearestNeighbours {
             double[][] testingFeatures,
             int[] testingLabels,
             int k) {
+        // Classify each test feature on the calling thread with the Euclidean distance
+        return evaluateAccuracyUsingKNearestNeighbours(trainingFeatures, trainingLabels, testingFeatures,
+                testingLabels, k, 1, NeighbourSearch.BRUTE_FORCE, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Evaluates the accuracy of the k-nearest neighbours algorithm using a pool of
+     * threads, the given neighbour search and distance metric. The test features
+     * are split into one
+     * contiguous chunk per thread and the counts of the chunks are added up, so the
+     * accuracy is the same as the sequential evaluation.
+     *
+     * @param trainingFeatures the features of the training dataset
+     * @param trainingLabels   the labels of the training dataset
+     * @param testingFeatures  the features of the testing dataset
+     * @param testingLabels    the labels of the testing dataset
+     * @param k                the number of neighbours to consider
+     * @param threads          the number of threads to use
+     * @param search           the neighbour search to use
+     * @param metric           the distance metric to use, the k-d tree and
+     *                         quantized searches only support the Euclidean metric
+     * @return accuracy of the k-nearest neighbours algorithm
+     */
+    public static double evaluateAccuracyUsingKNearestNeighbours(
+            double[][] trainingFeatures,
+            int[] trainingLabels,
+            double[][] testingFeatures,
+            int[] testingLabels,
+            int k,
+            int threads,
+            NeighbourSearch search,
+            DistanceMetric metric) {
+        // Build the index once and share it between the threads
+        ToIntFunction<double[]> classifier = createClassifier(trainingFeatures, trainingLabels, k, search, metric);
+
+        int correctPredictions = countCorrectPredictions(classifier, testingFeatures, testingLabels, threads);
+
+        // Prints the evaluation results
+        double accuracy = UserInterface.printFinalResults(correctPredictions, testingFeatures.length);
+        return accuracy;
+    }
+
+    /**
+     * Counts the correct predictions of a classifier using a pool of threads.
+     * The test features are split into one contiguous chunk per thread and the
+     * counts of the chunks are added up.
+     *
+     * @param classifier      the classifier predicting the label of a feature
+     * @param testingFeatures the features of the testing dataset
+     * @param testingLabels   the labels of the testing dataset
+     * @param threads         the number of threads to use
+     * @return the number of correct predictions
+     */
+    static int countCorrectPredictions(ToIntFunction<double[]> classifier, double[][] testingFeatures,
+            int[] testingLabels, int threads) {
+        int chunks = Math.min(threads, testingFeatures.length);
+        // Count on the calling thread when there is nothing to split
+        if (chunks <= 1) {
+            return countCorrectPredictions(classifier, testingFeatures, testingLabels, 0, testingFeatures.length);
+        }
+
+        int correctPredictions = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(chunks);
+        try {
+            // Submit one chunk of the test features per thread
+            List<Future<Integer>> counts = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int from = testingFeatures.length * chunk / chunks;
+                int to = testingFeatures.length * (chunk + 1) / chunks;
+                counts.add(executor.submit(
+                        () -> countCorrectPredictions(classifier, testingFeatures, testingLabels, from, to)));
+            }
+            // Merge the counts of every chunk
+            for (Future<Integer> count : counts) {
+                correctPredictions += count.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Evaluation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Evaluation failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return correctPredictions;
+    }
+
+    /**
+     * Creates a classifier over a training dataset with the default number of
+     * neighbours, neighbour search and distance metric.
+     *
+     * @param trainingDataset the training dataset, with the label last in every row
+     * @return the classifier, safe to call from several threads at once
+     */
+    public static ToIntFunction<double[]> createClassifier(int[][] trainingDataset) {
+        Dataset training = extractFeaturesAndLabels(trainingDataset);
+        return createClassifier(training.features, training.labels);
+    }
+
+    /**
+     * Creates a classifier over training features with the default number of
+     * neighbours, neighbour search and distance metric.
+     *
+     * @param trainingFeatures the features of the training dataset
+     * @param trainingLabels   the labels of the training dataset
+     * @return the classifier, safe to call from several threads at once
+     */
+    public static ToIntFunction<double[]> createClassifier(double[][] trainingFeatures, int[] trainingLabels) {
+        return createClassifier(trainingFeatures, trainingLabels, K, NEIGHBOUR_SEARCH, DISTANCE_METRIC);
+    }
+
+    /**
+     * Creates a classifier over training features, building the index of the
+     * neighbour search once.
+     *
+     * @param trainingFeatures the features of the training dataset
+     * @param trainingLabels   the labels of the training dataset
+     * @param k                the number of neighbours to consider
+     * @param search           the neighbour search to use
+     * @param metric           the distance metric to use, the k-d tree and
+     *                         quantized searches only support the Euclidean metric
+     * @return the classifier, safe to call from several threads at once
+     */
+    public static ToIntFunction<double[]> createClassifier(double[][] trainingFeatures, int[] trainingLabels,
+            int k, NeighbourSearch search, DistanceMetric metric) {
+        if (search != NeighbourSearch.BRUTE_FORCE && metric != DistanceMetric.EUCLIDEAN) {
+            throw new IllegalArgumentException(search + " search only supports the Euclidean distance");
+        }
+        if (search == NeighbourSearch.KD_TREE) {
+            KdTree tree = new KdTree(trainingFeatures);
+            return testFeature -> classifyUsingKdTree(tree, trainingLabels, testFeature, k);
+        }
+        if (search == NeighbourSearch.QUANTIZED) {
+            QuantizedFeatures store = new QuantizedFeatures(trainingFeatures);
+            return testFeature -> classifyUsingQuantizedFeatures(store, trainingLabels, testFeature, k);
+        }
+        int[] order = Utility.orderDimensionsByVariance(trainingFeatures);
+        return testFeature -> classifyUsingKNearestNeighbours(trainingFeatures, trainingLabels, testFeature, k,
+                metric, order);
+    }
+
+    /**
+     * Counts the correct predictions for a range of test features.
+     *
+     * @param classifier      the classifier predicting the label of a feature
+     * @param testingFeatures the features of the testing dataset
+     * @param testingLabels   the labels of the testing dataset
+     * @param from            the first test feature (inclusive)
+     * @param to              the last test feature (exclusive)
+     * @return the number of correct predictions
+     */
+    private static int countCorrectPredictions(ToIntFunction<double[]> classifier, double[][] testingFeatures,
+            int[] testingLabels, int from, int to) {
         int correctPredictions = 0;
-        // Classify each test feature and count the correct predictions
-        for (int testIndex = 0; testIndex < testingFeatures.length; testIndex++) {
+        for (int testIndex = from; testIndex < to; testIndex++) {
             // Classify the test feature using the k-nearest neighbours algorithm
-            int predictedLabel = classifyUsingKNearestNeighbours(trainingFeatures, trainingLabels,
-                    testingFeatures[testIndex], k);
+            int predictedLabel = classifier.applyAsInt(testingFeatures[testIndex]);
             // Check if the predicted label is correct
             if (predictedLabel == testingLabels[testIndex]) {
                 // Increment the number of correct predictions
                 correctPredictions++;
             }
         }
-
-        // Prints the evaluation results
-        double accuracy = UserInterface.printFinalResults(correctPredictions, testingFeatures.length);
-        return accuracy;
+        return correctPredictions;
     }
 
     /**
-     * Classifies a test feature using the k-nearest neighbours algorithm.
+     * Classifies a test feature using the k-nearest neighbours algorithm. Every
+     * distance is evaluated against the current k-th nearest neighbour and stops
+     * as soon as it is further away.
      *
      * @param trainingFeatures the features of the training dataset
      * @param trainingLabels   the labels of the training dataset
      * @param testFeature      the feature to classify
      * @param k                the number of neighbours to consider
+     * @param metric           the distance metric
+     * @param order            the order in which the dimensions are visited
      * @return the predicted label
      */
-    private static int classifyUsingKNearestNeighbours(double[][] trainingFeatures, int[] trainingLabels,
-            double[] testFeature, int k) {
-        // Create a priority queue to store the neighbours
-        PriorityQueue<Neighbour> neighbours = new PriorityQueue<>(k, (a, b) -> Double.compare(b.distance, a.distance));
+    public static int classifyUsingKNearestNeighbours(double[][] trainingFeatures, int[] trainingLabels,
+            double[] testFeature, int k, DistanceMetric metric, int[] order) {
+        NeighbourScratch scratch = SCRATCH.get();
+        int size = Math.min(k, trainingFeatures.length);
+        scratch.reset(size, testFeature.length);
 
         // Find the k nearest neighbours
         for (int trainingIndex = 0; trainingIndex < trainingFeatures.length; trainingIndex++) {
-            // Calculate the distance between the training feature and the test feature
-            double distance = Utility.calculateEuclideanDistance(trainingFeatures[trainingIndex], testFeature);
-            // Add the neighbour to the priority queue
-            if (neighbours.size() < k) {
-                // Add the neighbour if the queue is not full
-                neighbours.add(new Neighbour(trainingLabels[trainingIndex], distance));
-            } else if (neighbours.peek().distance > distance) {
-                // Replace the neighbour with the largest distance if the queue is full and the
-                // new distance is smaller
-                neighbours.poll();
-                neighbours.add(new Neighbour(trainingLabels[trainingIndex], distance));
-            }
+            // Anything further than the current k-th neighbour is rejected, so the distance
+            // does not need to be computed past it
+            double bound = scratch.found < size ? Double.POSITIVE_INFINITY : scratch.neighbourDistances[size - 1];
+            double distance = metric.boundedDistance(trainingFeatures[trainingIndex], testFeature, order, bound);
+            // Keep the neighbour if it is closer than the current k-th neighbour
+            scratch.found = Utility.insertNeighbour(trainingIndex, distance, scratch.neighbourIndices,
+                    scratch.neighbourDistances, scratch.found);
         }
 
-        return findMostCommonLabel(neighbours);
+        return findMostCommonLabel(trainingLabels, scratch);
     }
 
     /**
-     * Finds the most common label in the neighbours.
+     * Classifies a test feature using a k-d tree built over the training features.
      *
-     * @param neighbours the neighbours
+     * @param tree           the k-d tree of the training features
+     * @param trainingLabels the labels of the training dataset
+     * @param testFeature    the feature to classify
+     * @param k              the number of neighbours to consider
+     * @return the predicted label
+     */
+    public static int classifyUsingKdTree(KdTree tree, int[] trainingLabels, double[] testFeature, int k) {
+        NeighbourScratch scratch = SCRATCH.get();
+        tree.findNearestNeighbours(testFeature, k, scratch);
+        return findMostCommonLabel(trainingLabels, scratch);
+    }
+
+    /**
+     * Classifies a test feature using the quantized training features.
+     *
+     * @param store          the quantized training features
+     * @param trainingLabels the labels of the training dataset
+     * @param testFeature    the feature to classify
+     * @param k              the number of neighbours to consider
+     * @return the predicted label
+     */
+    public static int classifyUsingQuantizedFeatures(QuantizedFeatures store, int[] trainingLabels,
+            double[] testFeature, int k) {
+        NeighbourScratch scratch = SCRATCH.get();
+        store.findNearestNeighbours(testFeature, k, scratch);
+        return findMostCommonLabel(trainingLabels, scratch);
+    }
+
+    /**
+     * Finds the most common label of the neighbours, preferring the smallest label
+     * on a tie.
+     *
+     * @param trainingLabels the labels of the training dataset
+     * @param scratch        the buffers holding the neighbours
      * @return the most common label
      */
-    private static int findMostCommonLabel(PriorityQueue<Neighbour> neighbours) {
-        // Create a map to store the counts of each label
-        Map<Integer, Integer> counts = new HashMap<>();
-        // Count the occurrences of each label
-        while (!neighbours.isEmpty()) {
-            // Get the next neighbour
-            Neighbour neighbour = neighbours.poll();
-            // Increment the count of the label
-            counts.put(neighbour.label, counts.getOrDefault(neighbour.label, 0) + 1);
+    private static int findMostCommonLabel(int[] trainingLabels, NeighbourScratch scratch) {
+        // Count the labels of the neighbours
+        int[] counts = scratch.labelCounts;
+        Arrays.fill(counts, 0);
+        for (int position = 0; position < scratch.found; position++) {
+            counts[trainingLabels[scratch.neighbourIndices[position]]]++;
         }
-
         // Find the most common label
-        return counts.entrySet().stream().max(Map.Entry.comparingByValue()).get().getKey();
+        int mostCommonLabel = 0;
+        for (int label = 1; label < counts.length; label++) {
+            if (counts[label] > counts[mostCommonLabel]) {
+                mostCommonLabel = label;
+            }
+        }
+        return mostCommonLabel;
     }
 
     /**
@@ -162,18 +360,4 @@ public class KNearestNeighbours {
             this.labels = labels;
         }
     }
-
-    /**
-     * Class representing a neighbour.
-     */
-    private static class Neighbour {
-        int label;
-        double distance;
-
-        // Constructor
-        Neighbour(int label, double distance) {
-            this.label = label;
-            this.distance = distance;
-        }
-    }
 }
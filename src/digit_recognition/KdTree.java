@@ -0,0 +1,249 @@
+package digit_recognition;
+
+import java.util.Arrays;
+
+/**
+ * Class representing a k-d tree built over the training features. It answers
+ * exact k-nearest neighbour queries under the Euclidean distance and skips
+ * every subtree whose cell is further away than the current k-th best
+ * neighbour. The distance to a cell is updated incrementally one split at a
+ * time, which prunes far more than the distance to the last splitting plane
+ * alone when there are many dimensions.
+ *
+ * Neighbours are ordered by distance and then by training index, so the result
+ * does not depend on the order in which the tree is visited.
+ */
+public class KdTree {
+    // Maximum number of points stored in a leaf
+    private static final int LEAF_SIZE = 8;
+
+    private final int dimensions;
+    // Points stored row-major in tree order and their original indices
+    private final double[] points;
+    private final int[] indices;
+
+    // Nodes of the tree, a split dimension of -1 marks a leaf
+    private int nodeCount;
+    private int[] splitDimension;
+    private double[] splitValue;
+    private int[] leftChild;
+    private int[] rightChild;
+    private int[] start;
+    private int[] end;
+
+    /**
+     * Constructor for the KdTree class.
+     *
+     * @param features the training features, one row per point
+     */
+    public KdTree(double[][] features) {
+        this.dimensions = features.length == 0 ? 0 : features[0].length;
+        this.indices = new int[features.length];
+        for (int index = 0; index < indices.length; index++) {
+            indices[index] = index;
+        }
+
+        // A binary tree with leaves of at least half the leaf size has fewer than
+        // 4n / LEAF_SIZE + 1 nodes
+        int capacity = 4 * features.length / LEAF_SIZE + 1;
+        this.splitDimension = new int[capacity];
+        this.splitValue = new double[capacity];
+        this.leftChild = new int[capacity];
+        this.rightChild = new int[capacity];
+        this.start = new int[capacity];
+        this.end = new int[capacity];
+        build(features, 0, features.length);
+
+        // Copy the points in tree order so that the leaves are read sequentially
+        this.points = new double[features.length * dimensions];
+        for (int position = 0; position < indices.length; position++) {
+            System.arraycopy(features[indices[position]], 0, points, position * dimensions, dimensions);
+        }
+    }
+
+    /**
+     * Finds the k nearest neighbours of a query point.
+     *
+     * @param query the query point
+     * @param k     the number of neighbours to find
+     * @return the indices of the neighbours ordered from the nearest
+     */
+    public int[] findNearestNeighbours(double[] query, int k) {
+        NeighbourScratch scratch = new NeighbourScratch(0);
+        findNearestNeighbours(query, k, scratch);
+        return Arrays.copyOf(scratch.neighbourIndices, scratch.found);
+    }
+
+    /**
+     * Finds the k nearest neighbours of a query point using reusable buffers.
+     *
+     * @param query   the query point
+     * @param k       the number of neighbours to find
+     * @param scratch the buffers receiving the neighbours
+     */
+    public void findNearestNeighbours(double[] query, int k, NeighbourScratch scratch) {
+        scratch.reset(Math.min(k, indices.length), dimensions);
+        if (scratch.neighbourIndices.length > 0) {
+            scratch.query = query;
+            search(0, scratch, 0.0);
+            scratch.query = null;
+        }
+    }
+
+    /**
+     * Gets the number of points in the tree.
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return indices.length;
+    }
+
+    /**
+     * Builds the subtree holding the given range of points.
+     *
+     * @param features the training features
+     * @param from     the first point of the range (inclusive)
+     * @param to       the last point of the range (exclusive)
+     * @return the index of the subtree's root node
+     */
+    private int build(double[][] features, int from, int to) {
+        int node = nodeCount++;
+        start[node] = from;
+        end[node] = to;
+        splitDimension[node] = -1;
+        if (to - from <= LEAF_SIZE) {
+            return node;
+        }
+
+        // Split along the dimension with the largest spread
+        int dimension = -1;
+        double largestSpread = 0.0;
+        for (int candidate = 0; candidate < dimensions; candidate++) {
+            double smallest = Double.POSITIVE_INFINITY;
+            double biggest = Double.NEGATIVE_INFINITY;
+            for (int position = from; position < to; position++) {
+                double value = features[indices[position]][candidate];
+                smallest = Math.min(smallest, value);
+                biggest = Math.max(biggest, value);
+            }
+            if (biggest - smallest > largestSpread) {
+                largestSpread = biggest - smallest;
+                dimension = candidate;
+            }
+        }
+        // All points in the range are equal so they stay in one leaf
+        if (dimension < 0) {
+            return node;
+        }
+
+        // Partition the range around the median of the chosen dimension
+        int middle = (from + to) >>> 1;
+        select(features, dimension, from, to - 1, middle);
+        splitDimension[node] = dimension;
+        splitValue[node] = features[indices[middle]][dimension];
+        leftChild[node] = build(features, from, middle);
+        rightChild[node] = build(features, middle, to);
+        return node;
+    }
+
+    /**
+     * Reorders the indices in the range so that the element at the target
+     * position is the one that would be there if the range was sorted by the
+     * given dimension, with smaller values before it and bigger values after it.
+     *
+     * @param features  the training features
+     * @param dimension the dimension to order by
+     * @param left      the first position of the range (inclusive)
+     * @param right     the last position of the range (inclusive)
+     * @param target    the position to select
+     */
+    private void select(double[][] features, int dimension, int left, int right, int target) {
+        while (left < right) {
+            double pivot = features[indices[(left + right) >>> 1]][dimension];
+            int low = left;
+            int high = right;
+            while (low <= high) {
+                while (features[indices[low]][dimension] < pivot) {
+                    low++;
+                }
+                while (features[indices[high]][dimension] > pivot) {
+                    high--;
+                }
+                if (low <= high) {
+                    int swap = indices[low];
+                    indices[low] = indices[high];
+                    indices[high] = swap;
+                    low++;
+                    high--;
+                }
+            }
+            if (target <= high) {
+                right = high;
+            } else if (target >= low) {
+                left = low;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Searches a subtree for neighbours closer than the current ones.
+     *
+     * @param node         the root of the subtree
+     * @param state        the buffers of the query
+     * @param cellDistance the squared distance from the query to the subtree's cell
+     */
+    private void search(int node, NeighbourScratch state, double cellDistance) {
+        double[] query = state.query;
+        int dimension = splitDimension[node];
+        if (dimension < 0) {
+            // Check every point of the leaf
+            for (int position = start[node]; position < end[node]; position++) {
+                double distance = squaredDistance(query, position);
+                state.found = Utility.insertNeighbour(indices[position], distance, state.neighbourIndices, state.neighbourDistances,
+                        state.found);
+            }
+            return;
+        }
+
+        // Visit the side of the plane holding the query first, its cell distance is
+        // unchanged
+        double difference = query[dimension] - splitValue[node];
+        int near = difference < 0 ? leftChild[node] : rightChild[node];
+        int far = difference < 0 ? rightChild[node] : leftChild[node];
+        search(near, state, cellDistance);
+
+        // The far cell only differs from this cell along the split dimension, so its
+        // distance replaces that dimension's offset with the distance to the plane
+        double previousOffset = state.offsets[dimension];
+        double farDistance = cellDistance - previousOffset * previousOffset + difference * difference;
+        // Only visit the other side if it can hold a point that is not further away
+        // than the current k-th neighbour
+        int k = state.neighbourIndices.length;
+        if (state.found < k || farDistance <= state.neighbourDistances[k - 1]) {
+            state.offsets[dimension] = difference;
+            search(far, state, farDistance);
+            state.offsets[dimension] = previousOffset;
+        }
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between the query and a point of
+     * the tree.
+     *
+     * @param query    the query point
+     * @param position the position of the point in tree order
+     * @return the squared distance
+     */
+    private double squaredDistance(double[] query, int position) {
+        int offset = position * dimensions;
+        double sum = 0.0;
+        for (int dimension = 0; dimension < dimensions; dimension++) {
+            double difference = query[dimension] - points[offset + dimension];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+}
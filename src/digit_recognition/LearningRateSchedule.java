@@ -0,0 +1,58 @@
+package digit_recognition;
+
+/**
+ * Enum representing the ways the learning rate changes over the epochs of a
+ * training schedule.
+ */
+public enum LearningRateSchedule {
+    // The same rate for every epoch
+    CONSTANT {
+        @Override
+        public double rate(double learningRate, int epoch, int epochs) {
+            return learningRate;
+        }
+    },
+    // Rate multiplied by the decay after every step of epochs
+    STEP {
+        @Override
+        public double rate(double learningRate, int epoch, int epochs) {
+            return learningRate * Math.pow(MultiLayerPerceptron.LEARNING_RATE_STEP_DECAY,
+                    epoch / MultiLayerPerceptron.LEARNING_RATE_STEP_EPOCHS);
+        }
+    },
+    // Rate following half a cosine from its full value down towards zero at the last epoch
+    COSINE {
+        @Override
+        public double rate(double learningRate, int epoch, int epochs) {
+            return learningRate * 0.5 * (1 + Math.cos(Math.PI * Math.min(epoch, epochs) / epochs));
+        }
+    },
+    // Rate growing linearly over the warmup epochs, constant after them
+    WARMUP {
+        @Override
+        public double rate(double learningRate, int epoch, int epochs) {
+            return learningRate * Math.min(1.0, (epoch + 1.0) / MultiLayerPerceptron.WARMUP_EPOCHS);
+        }
+    },
+    // Linear warmup followed by a cosine over the remaining epochs
+    WARMUP_COSINE {
+        @Override
+        public double rate(double learningRate, int epoch, int epochs) {
+            int warmup = MultiLayerPerceptron.WARMUP_EPOCHS;
+            if (epoch < warmup || epochs <= warmup) {
+                return WARMUP.rate(learningRate, epoch, epochs);
+            }
+            return COSINE.rate(learningRate, epoch - warmup, epochs - warmup);
+        }
+    };
+
+    /**
+     * Computes the learning rate of an epoch.
+     *
+     * @param learningRate the base learning rate
+     * @param epoch        the epoch, from zero
+     * @param epochs       the number of epochs the schedule spans
+     * @return the learning rate of the epoch
+     */
+    public abstract double rate(double learningRate, int epoch, int epochs);
+}
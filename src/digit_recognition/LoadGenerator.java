@@ -0,0 +1,179 @@
+package digit_recognition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class sending concurrent prediction requests to an {@link InferenceServer}
+ * and reporting the throughput, the latency percentiles and the accuracy of the
+ * answers. Every request holds one row of a dataset, without its label.
+ */
+public class LoadGenerator {
+    // Constants for the load
+    private static final int DEFAULT_REQUESTS = 20000;
+    private static final int DEFAULT_CONCURRENCY = 32;
+    // Requests sent before measuring, so that both ends run compiled code
+    private static final int WARMUP_REQUESTS = 2000;
+
+    /**
+     * Sends the requests and prints the results.
+     *
+     * @param args the URL of the endpoint and the dataset, then optionally the
+     *             number of requests and the number of concurrent clients
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java digit_recognition.LoadGenerator <url> <dataset> [requests] "
+                    + "[concurrency]");
+            return;
+        }
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CONCURRENCY;
+        try {
+            URL url = new URL(args[0]);
+            int[][] dataset = DatasetReader.readDataset(args[1]);
+            if (dataset.length == 0) {
+                System.out.println("The dataset is empty.");
+                return;
+            }
+            run(url, dataset, Math.min(WARMUP_REQUESTS, requests), concurrency);
+            run(url, dataset, requests, concurrency).print(url, concurrency);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage() + ". Please provide a valid path to the dataset.");
+        } catch (IOException e) {
+            System.out.println("Error when sending requests: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends requests from concurrent clients, each sending its next request as
+     * soon as the previous one is answered.
+     *
+     * @param url         the URL of the endpoint
+     * @param dataset     the rows sent, in turn
+     * @param requests    the number of requests
+     * @param concurrency the number of clients
+     * @return the results of the requests
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    private static Results run(URL url, int[][] dataset, int requests, int concurrency)
+            throws InterruptedException {
+        // The body of every row is built once, outside of the measured time
+        byte[][] bodies = new byte[dataset.length][];
+        for (int row = 0; row < dataset.length; row++) {
+            int[] values = Arrays.copyOf(dataset[row], dataset[row].length - 1);
+            bodies[row] = (Arrays.toString(values).replaceAll("[\\[\\] ]", "") + "\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+
+        Results results = new Results(requests);
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long startTime = System.nanoTime();
+        for (int client = 0; client < concurrency; client++) {
+            clients.execute(() -> {
+                int request;
+                while ((request = next.getAndIncrement()) < requests) {
+                    int row = request % dataset.length;
+                    long sent = System.nanoTime();
+                    try {
+                        String answer = post(url, bodies[row]).trim();
+                        results.latencies[request] = System.nanoTime() - sent;
+                        if (Integer.parseInt(answer) == dataset[row][dataset[row].length - 1]) {
+                            results.correct.incrementAndGet();
+                        }
+                    } catch (IOException | NumberFormatException e) {
+                        results.latencies[request] = -1;
+                        results.failed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        results.elapsedNanos = System.nanoTime() - startTime;
+        return results;
+    }
+
+    /**
+     * Sends a request and reads its answer.
+     *
+     * @param url  the URL of the endpoint
+     * @param body the body of the request
+     * @return the answer
+     * @throws IOException if the request fails
+     */
+    private static String post(URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "text/plain");
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+        if (connection.getResponseCode() != 200) {
+            // Reads the error so the connection can be reused
+            try (InputStream error = connection.getErrorStream()) {
+                if (error != null) {
+                    error.readAllBytes();
+                }
+            }
+            throw new IOException("HTTP " + connection.getResponseCode());
+        }
+        // Reading the whole answer lets the connection be kept alive for the next request
+        ByteArrayOutputStream answer = new ByteArrayOutputStream();
+        try (InputStream input = connection.getInputStream()) {
+            input.transferTo(answer);
+        }
+        return answer.toString(StandardCharsets.US_ASCII);
+    }
+
+    // Latencies and outcomes of a run of requests
+    private static class Results {
+        final long[] latencies;
+        final AtomicInteger correct = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        long elapsedNanos;
+
+        Results(int requests) {
+            latencies = new long[requests];
+        }
+
+        // Prints the throughput, the latency percentiles and the accuracy
+        void print(URL url, int concurrency) {
+            long[] answered = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+            System.out.printf("%d requests to %s from %d clients in %.2f s%n", latencies.length, url,
+                    concurrency, elapsedNanos / 1e9);
+            System.out.printf("Throughput: %.0f requests/s%n", answered.length / (elapsedNanos / 1e9));
+            if (answered.length > 0) {
+                System.out.printf("Latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                        percentile(answered, 0.50) / 1e6, percentile(answered, 0.99) / 1e6,
+                        answered[answered.length - 1] / 1e6);
+                System.out.printf("Accuracy: %.5f%n", (double) correct.get() / answered.length);
+            }
+            if (failed.get() > 0) {
+                System.out.printf("Failed requests: %d%n", failed.get());
+            }
+        }
+
+        // Gets the latency below which a fraction of the sorted latencies falls
+        static long percentile(long[] sorted, double fraction) {
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package digit_recognition;
 
 import java.io.FileNotFoundException;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 /**
@@ -19,9 +20,11 @@ public class Main {
 		}
 		String datasetOne = args[0];
 		String datasetTwo = args[1];
+		// Trained networks are kept in the optional model directory
+		String modelDirectory = args.length > 2 ? args[2] : null;
 
 		// Load and execute the user's choice
-		loadAndExecute(datasetOne, datasetTwo);
+		loadAndExecute(datasetOne, datasetTwo, modelDirectory);
 	}
 
 	/**
@@ -33,7 +36,7 @@ public class Main {
 	private static boolean validateArguments(String[] args) {
 		// Check if the datasets are provided
 		if (args.length < 2) {
-			System.out.println("Usage: java -jar digit_recognition.jar <dataset1> <dataset2>");
+			System.out.println("Usage: java -jar digit_recognition.jar <dataset1> <dataset2> [modelDirectory]");
 			if (args.length == 0) {
 				System.out.println("No datasets provided.");
 				return false;
@@ -58,8 +61,9 @@ public class Main {
 	 *
 	 * @param datasetOnePath the path to the first dataset
 	 * @param datasetTwoPath the path to the second dataset
+	 * @param modelDirectory the directory of the trained networks, or null
 	 */
-	private static void loadAndExecute(String datasetOnePath, String datasetTwoPath) {
+	private static void loadAndExecute(String datasetOnePath, String datasetTwoPath, String modelDirectory) {
 		try {
 			// Read the datasets
 			int[][] datasetOne = DatasetReader.readDataset(datasetOnePath);
@@ -67,11 +71,15 @@ public class Main {
 			System.out.printf("\nDatasets loaded\nDataset 1: %s\nDataset 2: %s\n\n", datasetOnePath,
 					datasetTwoPath);
 
+			// A network trained on each dataset is stored under the name of that dataset
+			String modelOne = modelPath(modelDirectory, datasetOnePath);
+			String modelTwo = modelPath(modelDirectory, datasetTwoPath);
+
 			// Execute the user's choice
 			try (Scanner scanner = new Scanner(System.in)) {
 				while (true) {
 					int choice = UserInterface.getUserChoice(scanner);
-					if (!executeChoice(choice, datasetOne, datasetTwo))
+					if (!executeChoice(choice, datasetOne, datasetTwo, modelOne, modelTwo))
 						break;
 				}
 			}
@@ -80,32 +88,46 @@ public class Main {
 		}
 	}
 
+	/**
+	 * Builds the path of the model file of a network trained on a dataset.
+	 *
+	 * @param modelDirectory the directory of the trained networks, or null
+	 * @param datasetPath    the path to the dataset
+	 * @return the path to the model file, or null if there is no model directory
+	 */
+	private static String modelPath(String modelDirectory, String datasetPath) {
+		if (modelDirectory == null) {
+			return null;
+		}
+		String name = Paths.get(datasetPath).getFileName().toString();
+		int extension = name.lastIndexOf('.');
+		if (extension > 0) {
+			name = name.substring(0, extension);
+		}
+		return Paths.get(modelDirectory, name + ".model").toString();
+	}
+
 	/**
 	 * Executes the user's choice.
 	 *
 	 * @param choice     the user's choice
 	 * @param datasetOne the first dataset
 	 * @param datasetTwo the second dataset
+	 * @param modelOne   the model file of the network trained on the first dataset, or null
+	 * @param modelTwo   the model file of the network trained on the second dataset, or null
 	 * @return true if the user wants to continue, false otherwise
 	 */
-	private static boolean executeChoice(int choice, int[][] datasetOne, int[][] datasetTwo) {
+	private static boolean executeChoice(int choice, int[][] datasetOne, int[][] datasetTwo, String modelOne,
+			String modelTwo) {
 		switch (choice) {
 			// execute the K-Nearest Neighbour algorithm
 			case 1:
 				System.out.println("--------------------------------------------------");
 
 				System.out.println("Using K-Nearest Neighbour...\n");
-				// Perform the first fold test
-				System.out.println("First Fold Test");
-				double firstFoldTestKNNAccuracy = KNearestNeighbours.execute(datasetOne, datasetTwo);
-
-				// Perform the second fold test
-				System.out.println("Second Fold Test");
-				double secondFoldTestKNNAccuracy = KNearestNeighbours.execute(datasetTwo, datasetOne);
-
-				// Calculate the average accuracy
-				System.out.println(
-						"Average Accuracy: " + (firstFoldTestKNNAccuracy + secondFoldTestKNNAccuracy) / 2 + "\n");
+				// Each dataset is one fold, and both folds are tested at the same time
+				UserInterface.printCrossValidation(
+						new CrossValidation(datasetOne, datasetTwo).run(Algorithm.K_NEAREST_NEIGHBOURS));
 
 				System.out.println("--------------------------------------------------");
 				break;
@@ -115,15 +137,23 @@ public class Main {
 				System.out.println("--------------------------------------------------");
 
 				System.out.println("Using Multilayer Layer Perceptron...\n");
+				if (modelOne == null) {
+					// Without model files both folds are trained at the same time
+					UserInterface.printCrossValidation(
+							new CrossValidation(datasetOne, datasetTwo).run(Algorithm.MULTI_LAYER_PERCEPTRON));
+					System.out.println("--------------------------------------------------");
+					break;
+				}
+				// Networks kept in model files are loaded or trained one fold after the other
 				// Perform the first fold test
 				System.out.println("First Fold Test\n");
-				double[] firstFoldTestMLPAccuracy = MultiLayerPerceptron.execute(datasetOne, datasetTwo);
+				double[] firstFoldTestMLPAccuracy = MultiLayerPerceptron.execute(datasetOne, datasetTwo, modelOne);
 				double firstFoldTestMLPTrainingAccuracy = firstFoldTestMLPAccuracy[0];
 				double firstFoldTestMLPTestingAccuracy = firstFoldTestMLPAccuracy[1];
 
 				// Perform the second fold test
 				System.out.println("Second Fold Test\n");
-				double[] secondFoldTestMLPAccuracy = MultiLayerPerceptron.execute(datasetTwo, datasetOne);
+				double[] secondFoldTestMLPAccuracy = MultiLayerPerceptron.execute(datasetTwo, datasetOne, modelTwo);
 				double secondFoldTestMLPTrainingAccuracy = secondFoldTestMLPAccuracy[0];
 				double secondFoldTestMLPTestingAccuracy = secondFoldTestMLPAccuracy[1];
 
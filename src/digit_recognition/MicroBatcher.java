@@ -0,0 +1,190 @@
+package digit_recognition;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class grouping classification requests made at the same time into batches.
+ * A single thread takes the requests in arrival order and classifies them in
+ * batches of up to a maximum size. The first request of a batch waits at most
+ * the latency budget for others to join it, so a lone request is delayed by no
+ * more than the budget while a busy stream of requests fills whole batches.
+ */
+class MicroBatcher implements Closeable {
+
+    // Classifier of a batch of inputs, only ever called from the batching thread
+    interface BatchClassifier {
+        void classify(double[][] inputs, int count, int[] labels);
+    }
+
+    private final BatchClassifier classifier;
+    private final int maxBatchSize;
+    private final long latencyBudgetNanos;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    // Counters of the classified requests and of the batches they were grouped in
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * Constructor for the MicroBatcher class, starting the batching thread.
+     *
+     * @param name               the name of the batching thread
+     * @param classifier         the classifier of the batches
+     * @param maxBatchSize       the largest number of requests in a batch
+     * @param latencyBudgetNanos the longest time a request waits for others, in
+     *                           nanoseconds
+     */
+    MicroBatcher(String name, BatchClassifier classifier, int maxBatchSize, long latencyBudgetNanos) {
+        if (maxBatchSize < 1 || latencyBudgetNanos < 0) {
+            throw new IllegalArgumentException("The batch size must be positive and the latency budget not negative");
+        }
+        this.classifier = classifier;
+        this.maxBatchSize = maxBatchSize;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues an input for classification.
+     *
+     * @param input the input
+     * @return the future predicted label
+     */
+    CompletableFuture<Integer> submit(double[] input) {
+        Request request = new Request(input, System.nanoTime());
+        queue.add(request);
+        // A request queued while closing would never be taken
+        if (closed && queue.remove(request)) {
+            request.result.completeExceptionally(new IllegalStateException("The batcher is closed"));
+        }
+        return request.result;
+    }
+
+    /**
+     * Gets the average number of requests classified per batch.
+     *
+     * @return the average batch size
+     */
+    double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) requestCount.get() / batches;
+    }
+
+    /**
+     * Gets the number of requests classified so far.
+     *
+     * @return the number of requests
+     */
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Stops the batching thread. Requests still queued or waiting for their
+     * batch to fill fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new IllegalStateException("The batcher is closed"));
+        }
+    }
+
+    /**
+     * Takes the requests off the queue and classifies them in batches until the
+     * batcher is closed.
+     */
+    private void run() {
+        Request[] batch = new Request[maxBatchSize];
+        double[][] inputs = new double[maxBatchSize][];
+        int[] labels = new int[maxBatchSize];
+        // Requests taken off the queue and not yet classified
+        int count = 0;
+        try {
+            while (!closed) {
+                batch[0] = queue.take();
+                count = 1;
+                // Gathers the requests arriving before the budget of the first one runs out
+                long deadline = batch[0].arrival + latencyBudgetNanos;
+                while (count < maxBatchSize) {
+                    Request next = queue.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || (next = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null) {
+                            break;
+                        }
+                    }
+                    batch[count++] = next;
+                }
+                classifyBatch(batch, inputs, labels, count);
+                count = 0;
+            }
+        } catch (InterruptedException e) {
+            // Closing the batcher interrupts the thread, possibly while a batch is filling, and the requests
+            // already taken are no longer in the queue for close to fail
+            for (int index = 0; index < count; index++) {
+                batch[index].result.completeExceptionally(new IllegalStateException("The batcher is closed"));
+                batch[index] = null;
+            }
+        }
+    }
+
+    /**
+     * Classifies a batch of requests and completes their results.
+     *
+     * @param batch  the requests
+     * @param inputs the array receiving the inputs of the requests
+     * @param labels the array receiving the predicted labels
+     * @param count  the number of requests
+     */
+    private void classifyBatch(Request[] batch, double[][] inputs, int[] labels, int count) {
+        for (int index = 0; index < count; index++) {
+            inputs[index] = batch[index].input;
+        }
+        try {
+            classifier.classify(inputs, count, labels);
+            for (int index = 0; index < count; index++) {
+                batch[index].result.complete(labels[index]);
+            }
+        } catch (RuntimeException e) {
+            for (int index = 0; index < count; index++) {
+                batch[index].result.completeExceptionally(e);
+            }
+        }
+        requestCount.addAndGet(count);
+        batchCount.incrementAndGet();
+        // Drops the references so the inputs can be collected
+        for (int index = 0; index < count; index++) {
+            batch[index] = null;
+            inputs[index] = null;
+        }
+    }
+
+    // Input waiting to be classified, with the time it arrived
+    private static class Request {
+        final double[] input;
+        final long arrival;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Request(double[] input, long arrival) {
+            this.input = input;
+            this.arrival = arrival;
+        }
+    }
+}
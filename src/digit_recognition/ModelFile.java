@@ -0,0 +1,202 @@
+package digit_recognition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+/**
+ * Class responsible for reading and writing trained networks. A model file
+ * holds everything needed to rebuild the network without training it, in
+ * little-endian order:
+ *
+ * <pre>
+ * int      magic        "DGTM"
+ * int      version      1
+ * byte     valueType    4 for floats, 8 for doubles
+ * int      layers       number of layers, the input layer included
+ * int[]    layerSizes   neurons of every layer
+ * byte[]   activations  activation of every layer after the input: 1 sigmoid, 2 tanh, 3 ReLU,
+ *                       4 leaky ReLU, 5 softmax, 6 sigmoid and 7 tanh from the table
+ * values   parameters   weights then biases of every layer after the input
+ * double[] probe        output of the network for the probe input
+ * long     checksum     CRC32 of every byte before it
+ * </pre>
+ *
+ * The weights and biases are stored as their exact bits. Reading a model runs
+ * the probe input through the rebuilt network and rejects the file unless the
+ * output is bit for bit the one recorded when it was written.
+ */
+class ModelFile {
+    // Constants for the format
+    static final int MAGIC = 0x4D544744;
+    private static final int VERSION = 1;
+    private static final byte FLOAT_VALUES = 4;
+    private static final byte DOUBLE_VALUES = 8;
+    // Activations in the order of their codes, which start from 1
+    private static final Activation[] ACTIVATIONS = { Activation.SIGMOID, Activation.TANH, Activation.RELU,
+            Activation.LEAKY_RELU, Activation.SOFTMAX, Activation.FAST_SIGMOID, Activation.FAST_TANH };
+    // Largest number of layers and of neurons per layer accepted when reading
+    private static final int MAX_LAYERS = 64;
+    private static final int MAX_LAYER_SIZE = 1 << 16;
+
+    /**
+     * Writes a network to a file.
+     *
+     * @param network  the network
+     * @param filePath path to the model file
+     * @throws IOException if the file cannot be written
+     */
+    static void write(NetworkBase network, String filePath) throws IOException {
+        int[] layerSizes = network.NETWORK_LAYER_SIZE;
+        byte valueType = network.getPrecision() == Precision.FLOAT ? FLOAT_VALUES : DOUBLE_VALUES;
+        long size = fileSize(layerSizes, valueType);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Network is too large for a model file");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).put(valueType).putInt(layerSizes.length);
+        for (int layerSize : layerSizes) {
+            buffer.putInt(layerSize);
+        }
+        for (int layer = 1; layer < layerSizes.length; layer++) {
+            buffer.put(activationCode(network.getActivation(layer)));
+        }
+        network.writeParameters(buffer);
+        for (double value : network.forward(probeInput(layerSizes[0]))) {
+            buffer.putDouble(value);
+        }
+        buffer.putLong(checksum(buffer.array(), buffer.position()));
+        Files.write(Paths.get(filePath), buffer.array());
+    }
+
+    /**
+     * Reads a network from a file.
+     *
+     * @param filePath path to the model file
+     * @return the network
+     * @throws IOException if the file cannot be read or is not a valid model
+     */
+    static NetworkBase read(String filePath) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(filePath));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Read and check the header
+        if (bytes.length < 13 || buffer.getInt() != MAGIC) {
+            throw new IOException(filePath + " is not a model file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model version " + version + " in " + filePath);
+        }
+        byte valueType = buffer.get();
+        int layers = buffer.getInt();
+        if ((valueType != FLOAT_VALUES && valueType != DOUBLE_VALUES) || layers < 2 || layers > MAX_LAYERS
+                || buffer.remaining() < layers * Integer.BYTES) {
+            throw new IOException("Corrupted header in " + filePath);
+        }
+        int[] layerSizes = new int[layers];
+        for (int layer = 0; layer < layers; layer++) {
+            layerSizes[layer] = buffer.getInt();
+            if (layerSizes[layer] < 1 || layerSizes[layer] > MAX_LAYER_SIZE) {
+                throw new IOException("Corrupted header in " + filePath);
+            }
+        }
+        // A header stating more than a byte array can hold cannot describe a file that was read
+        long size = fileSize(layerSizes, valueType);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted header in " + filePath);
+        }
+        if (bytes.length != size) {
+            throw new IOException(filePath + " does not have the size its header states");
+        }
+        if (buffer.getLong(bytes.length - Long.BYTES) != checksum(bytes, bytes.length - Long.BYTES)) {
+            throw new IOException("Checksum mismatch in " + filePath);
+        }
+        Activation[] activations = new Activation[layers];
+        for (int layer = 1; layer < layers; layer++) {
+            byte activation = buffer.get();
+            if (activation < 1 || activation > ACTIVATIONS.length
+                    || (ACTIVATIONS[activation - 1].isLayerWide() && layer != layers - 1)) {
+                throw new IOException("Unsupported activation " + activation + " in " + filePath);
+            }
+            activations[layer] = ACTIVATIONS[activation - 1];
+        }
+
+        // Rebuild the network and check that it reproduces the recorded output
+        NetworkBase network = new NetworkBase(layerSizes,
+                valueType == FLOAT_VALUES ? Precision.FLOAT : Precision.DOUBLE);
+        for (int layer = 1; layer < layers; layer++) {
+            network.setActivation(layer, activations[layer]);
+        }
+        network.readParameters(buffer);
+        double[] output = network.forward(probeInput(layerSizes[0]));
+        for (double value : output) {
+            if (Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(buffer.getDouble())) {
+                throw new IOException(filePath + " does not reproduce the predictions it was saved with");
+            }
+        }
+        return network;
+    }
+
+    /**
+     * Calculates the size of the model file of a network.
+     *
+     * @param layerSizes the network layer sizes
+     * @param valueType  the size of a parameter in bytes
+     * @return the size in bytes, which may exceed the largest array
+     */
+    private static long fileSize(int[] layerSizes, byte valueType) {
+        long parameters = 0;
+        for (int layer = 1; layer < layerSizes.length; layer++) {
+            parameters += (long) layerSizes[layer] * (layerSizes[layer - 1] + 1);
+        }
+        return 3 * Integer.BYTES + 1 + (long) layerSizes.length * Integer.BYTES + layerSizes.length - 1
+                + parameters * valueType + (long) layerSizes[layerSizes.length - 1] * Double.BYTES + Long.BYTES;
+    }
+
+    /**
+     * Gets the code of an activation in the file.
+     *
+     * @param activation the activation
+     * @return the code
+     */
+    private static byte activationCode(Activation activation) {
+        for (int index = 0; index < ACTIVATIONS.length; index++) {
+            if (ACTIVATIONS[index] == activation) {
+                return (byte) (index + 1);
+            }
+        }
+        throw new IllegalArgumentException("No code for the activation " + activation);
+    }
+
+    /**
+     * Builds the probe input, which covers the whole range of the digit
+     * features.
+     *
+     * @param size the size of the input layer
+     * @return the probe input
+     */
+    private static double[] probeInput(int size) {
+        double[] input = new double[size];
+        for (int index = 0; index < size; index++) {
+            input[index] = index % 17;
+        }
+        return input;
+    }
+
+    /**
+     * Calculates the CRC32 of the start of an array.
+     *
+     * @param bytes  the array
+     * @param length the number of bytes covered
+     * @return the checksum
+     */
+    private static long checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+}
@@ -1,6 +1,11 @@
 package digit_recognition;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
 
 /**
  * Class responsible for creating and training the neural network.
@@ -19,6 +24,58 @@ public class MultiLayerPerceptron {
     final static int FIRST_HIDDEN_LAYER_NODE_AMOUNT = 31;
     final static int SECOND_HIDDEN_LAYER_NODE_AMOUNT = 10;
     final static int INPUT_LAYER_NODE_AMOUNT = 64;
+    final static TrainingMode TRAINING_MODE = TrainingMode.STOCHASTIC;
+    final static int TRAINING_THREADS = Runtime.getRuntime().availableProcessors();
+    // Single precision halves the size of the network but only trains stochastically with plain gradient descent
+    final static Precision NETWORK_PRECISION = Precision.DOUBLE;
+    // The digit features are whole numbers from 0 to 16, so bytes store them without loss
+    final static FeatureType DATASET_FEATURE_TYPE = FeatureType.UNSIGNED_BYTE;
+    // Uniform batches visit every sample once per pass over the training set
+    final static Sampling TRAINING_SAMPLING = Sampling.UNIFORM;
+    // Seed of the initial weights and of the batch order, so that runs can be repeated
+    final static long RANDOM_SEED = 20240101L;
+    // Samples held in memory when training on a streamed file
+    final static int SHUFFLE_BUFFER_SIZE = 8192;
+    // Share of the training set held out to stop training once it stops improving, zero to train every epoch on
+    // the whole set
+    final static double VALIDATION_SHARE = 0;
+    // Epochs between two validation checks, and checks without improvement before training stops
+    final static int VALIDATION_INTERVAL = 5;
+    final static int EARLY_STOPPING_PATIENCE = 4;
+    final static double EARLY_STOPPING_MINIMUM_IMPROVEMENT = 1e-4;
+    final static StoppingMetric EARLY_STOPPING_METRIC = StoppingMetric.LOSS;
+    // Rule turning the gradients into weight updates, and how the learning rate changes over the epochs. Adam
+    // reaches the accuracy of plain gradient descent in a fraction of the epochs
+    final static Optimizer OPTIMIZER = Optimizer.SGD;
+    final static LearningRateSchedule LEARNING_RATE_SCHEDULE = LearningRateSchedule.CONSTANT;
+    // Single precision networks keep no moments and Hogwild workers would race on them, so both fall back to plain
+    // gradient descent
+    final static Optimizer NETWORK_OPTIMIZER = NETWORK_PRECISION == Precision.DOUBLE
+            && TRAINING_MODE != TrainingMode.HOGWILD ? OPTIMIZER : Optimizer.SGD;
+    // Learning rate of every optimizer. Adam scales the step of every weight by its gradients, so it needs a far
+    // smaller rate than plain gradient descent
+    public static final double SGD_LEARNING_RATE = LEARNING_RATE;
+    public static final double MOMENTUM_LEARNING_RATE = 0.01;
+    public static final double ADAM_LEARNING_RATE = 0.001;
+    // Learning rate of the optimizer the networks train with
+    final static double NETWORK_LEARNING_RATE = learningRate(NETWORK_OPTIMIZER);
+    // Share of the previous step kept by momentum and Nesterov
+    final static double MOMENTUM = 0.9;
+    // Decay of the running mean and variance of the gradients kept by Adam, and the term keeping it from dividing by 0
+    final static double ADAM_FIRST_DECAY = 0.9;
+    final static double ADAM_SECOND_DECAY = 0.999;
+    final static double ADAM_EPSILON = 1e-8;
+    // Factor applied to the learning rate by the step schedule, and the epochs between two steps
+    final static double LEARNING_RATE_STEP_DECAY = 0.5;
+    final static int LEARNING_RATE_STEP_EPOCHS = 50;
+    // Epochs over which the warmup schedules ramp the learning rate up
+    final static int WARMUP_EPOCHS = 5;
+    // Activation of the hidden layers, and of the output layer, which is trained on the cross-entropy when it is
+    // the softmax and on the squared error otherwise
+    final static Activation HIDDEN_ACTIVATION = Activation.SIGMOID;
+    final static Activation OUTPUT_ACTIVATION = Activation.SIGMOID;
+    // Share of the negative sums kept by the leaky ReLU
+    final static double LEAKY_RELU_SLOPE = 0.01;
 
     /**
      * Executes the multi-layer perceptron algorithm.
@@ -28,19 +85,40 @@ public class MultiLayerPerceptron {
      * @return the accuracy of the multi-layer perceptron algorithm
      */
     public static double[] execute(int[][] firstDataset, int[][] secondDataset) {
-        // Create the neural network
-        NetworkBase network = new NetworkBase(new int[] { INPUT_LAYER_NODE_AMOUNT, FIRST_HIDDEN_LAYER_NODE_AMOUNT,
-                SECOND_HIDDEN_LAYER_NODE_AMOUNT, 10 });
+        return execute(firstDataset, secondDataset, null);
+    }
+
+    /**
+     * Executes the multi-layer perceptron algorithm, loading the trained network
+     * from a model file when there is one and saving it there after training
+     * otherwise.
+     *
+     * @param firstDataset  the first dataset
+     * @param secondDataset the second dataset
+     * @param modelPath     path to the model file of a network trained on the
+     *                      first dataset, or null to always train
+     * @return the accuracy of the multi-layer perceptron algorithm
+     */
+    public static double[] execute(int[][] firstDataset, int[][] secondDataset, String modelPath) {
         try {
             // Create the training set
             DataSet set = createSet(firstDataset);
             // Create the testing set
             DataSet testSet = createSet(secondDataset);
 
-            System.out.println("Training neural network...");
-            // Train the neural network
-            double trainingAccuracy = network.train(set, TRAINING_EPOCHS_VALUE, TRAINING_LOOPS_VALUE,
-                    TRAINING_BATCH_SIZE);
+            NetworkBase network = loadNetwork(modelPath);
+            double trainingAccuracy;
+            if (network != null) {
+                System.out.println("Evaluating loaded neural network...");
+                trainingAccuracy = network.evaluate(set);
+            } else {
+                // Create the neural network
+                network = createNetwork();
+                System.out.println("Training neural network...");
+                // Train the neural network
+                trainingAccuracy = train(network, set, TRAINING_MODE);
+                saveNetwork(network, modelPath);
+            }
 
             System.out.println("Testing neural network...");
             // Test the neural network
@@ -54,6 +132,179 @@ public class MultiLayerPerceptron {
         return null;
     }
 
+    /**
+     * Creates an untrained network with the layers and precision of the
+     * application.
+     *
+     * @return the network
+     */
+    static NetworkBase createNetwork() {
+        return createNetwork(FIRST_HIDDEN_LAYER_NODE_AMOUNT, SECOND_HIDDEN_LAYER_NODE_AMOUNT);
+    }
+
+    /**
+     * Creates an untrained network with the precision, activations and
+     * optimizer of the application and the given widths of the hidden layers.
+     *
+     * @param firstHiddenLayer  the number of nodes of the first hidden layer
+     * @param secondHiddenLayer the number of nodes of the second hidden layer
+     * @return the network
+     */
+    static NetworkBase createNetwork(int firstHiddenLayer, int secondHiddenLayer) {
+        NetworkBase network = new NetworkBase(
+                new int[] { INPUT_LAYER_NODE_AMOUNT, firstHiddenLayer, secondHiddenLayer, 10 }, NETWORK_PRECISION,
+                RANDOM_SEED);
+        for (int layer = 1; layer < network.NETWORK_SIZE - 1; layer++) {
+            network.setActivation(layer, HIDDEN_ACTIVATION);
+        }
+        network.setActivation(network.NETWORK_SIZE - 1, OUTPUT_ACTIVATION);
+        network.setOptimizer(NETWORK_OPTIMIZER);
+        network.setLearningRate(NETWORK_LEARNING_RATE);
+        network.setLearningRateSchedule(LEARNING_RATE_SCHEDULE, TRAINING_EPOCHS_VALUE);
+        return network;
+    }
+
+    /**
+     * Gets the learning rate an optimizer trains with.
+     *
+     * @param optimizer the optimizer
+     * @return the learning rate
+     */
+    static double learningRate(Optimizer optimizer) {
+        switch (optimizer) {
+            case SGD:
+                return SGD_LEARNING_RATE;
+            case MOMENTUM:
+            case NESTEROV:
+                return MOMENTUM_LEARNING_RATE;
+            default:
+                return ADAM_LEARNING_RATE;
+        }
+    }
+
+    /**
+     * Trains a network with the schedule of the application. When the
+     * validation share is not zero, that share of the set is held out and
+     * training stops once the network stops improving on it, with the weights
+     * of its best check.
+     *
+     * @param network the network
+     * @param set     the training set
+     * @param mode    the training mode
+     * @return the accuracy of the network on the whole training set
+     */
+    static double train(NetworkBase network, DataSet set, TrainingMode mode) {
+        DataSet[] split = splitValidation(set, VALIDATION_SHARE);
+        EarlyStopping stopping = split[1] == null ? null
+                : new EarlyStopping(split[1], EARLY_STOPPING_METRIC, VALIDATION_INTERVAL, EARLY_STOPPING_PATIENCE,
+                        EARLY_STOPPING_MINIMUM_IMPROVEMENT, true);
+        double accuracy = network.train(split[0], TRAINING_EPOCHS_VALUE, TRAINING_LOOPS_VALUE, TRAINING_BATCH_SIZE,
+                mode, stopping);
+        // The accuracy covers the validation samples too, like that of a network loaded from its model file
+        return stopping == null ? accuracy : network.evaluate(set);
+    }
+
+    /**
+     * Splits a random share of a dataset off as a validation set. Both parts are
+     * views, so no sample is copied.
+     *
+     * @param set   the dataset
+     * @param share the share of the samples held out, zero to hold out none
+     * @return the training part and the validation part, which is null when
+     *         nothing is held out
+     */
+    static DataSet[] splitValidation(DataSet set, double share) {
+        int validationSize = (int) Math.round(set.size() * share);
+        if (validationSize == 0) {
+            return new DataSet[] { set, null };
+        }
+        if (validationSize >= set.size()) {
+            throw new IllegalArgumentException("The validation set would leave nothing to train on");
+        }
+        int[] indices = new int[set.size()];
+        for (int index = 0; index < indices.length; index++) {
+            indices[index] = index;
+        }
+        Utility.shuffle(indices, indices.length, new SplittableRandom(RANDOM_SEED));
+        return new DataSet[] { set.view(indices, validationSize, indices.length),
+                set.view(indices, 0, validationSize) };
+    }
+
+    /**
+     * Loads a trained network from its model file if the file exists.
+     *
+     * @param modelPath path to the model file, or null
+     * @return the network, or null if it has to be trained
+     */
+    static NetworkBase loadNetwork(String modelPath) {
+        if (modelPath == null || !Files.isRegularFile(Paths.get(modelPath))) {
+            return null;
+        }
+        try {
+            long startTime = System.nanoTime();
+            NetworkBase network = NetworkBase.load(modelPath);
+            System.out.printf("Loaded neural network from %s in %.2f ms%n", modelPath,
+                    (System.nanoTime() - startTime) / 1e6);
+            return network;
+        } catch (IOException e) {
+            System.out.println("Error when loading " + modelPath + ": " + e.getMessage() + ". Training instead.");
+            return null;
+        }
+    }
+
+    /**
+     * Saves a trained network to its model file.
+     *
+     * @param network   the network
+     * @param modelPath path to the model file, or null to skip saving
+     */
+    static void saveNetwork(NetworkBase network, String modelPath) {
+        if (modelPath == null) {
+            return;
+        }
+        try {
+            Path parent = Paths.get(modelPath).toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            network.save(modelPath);
+            System.out.println("Saved neural network to " + modelPath);
+        } catch (IOException e) {
+            System.out.println("Error when saving " + modelPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Executes the multi-layer perceptron algorithm on datasets streamed from
+     * their files, so that only the shuffle buffer is held in memory.
+     *
+     * @param trainingFile path to the training dataset
+     * @param testingFile  path to the testing dataset
+     * @param epochs       the number of passes over the training dataset
+     * @return the accuracy of the multi-layer perceptron algorithm
+     * @throws FileNotFoundException if a file is not found
+     */
+    public static double[] executeStreaming(String trainingFile, String testingFile, int epochs)
+            throws FileNotFoundException {
+        // Create the neural network, printing every epoch as a pass over the file can take a while
+        NetworkBase network = createNetwork();
+        network.setTrainingListener(UserInterface::printEpochMetrics);
+        try (StreamingDataSet set = new StreamingDataSet(trainingFile, INPUT_LAYER_NODE_AMOUNT, 10,
+                SHUFFLE_BUFFER_SIZE, RANDOM_SEED);
+                StreamingDataSet testSet = new StreamingDataSet(testingFile, INPUT_LAYER_NODE_AMOUNT, 10,
+                        SHUFFLE_BUFFER_SIZE, RANDOM_SEED)) {
+            System.out.println("Training neural network...");
+            // Hogwild needs the whole set in memory so the streamed set falls back to mini-batches
+            TrainingMode mode = TRAINING_MODE == TrainingMode.HOGWILD ? TrainingMode.MINI_BATCH : TRAINING_MODE;
+            double trainingAccuracy = network.train(set, epochs, TRAINING_BATCH_SIZE, mode);
+
+            System.out.println("Testing neural network...");
+            double testingAccuracy = network.evaluate(testSet);
+
+            return new double[] { trainingAccuracy, testingAccuracy };
+        }
+    }
+
     /**
      * Creates a dataset from the provided 2D array.
      *
@@ -62,30 +313,23 @@ public class MultiLayerPerceptron {
      * @throws FileNotFoundException if the file is not found
      */
     public static DataSet createSet(int[][] dataset) throws FileNotFoundException {
-        // Create a new dataset
-        DataSet set = new DataSet(INPUT_LAYER_NODE_AMOUNT, 10);
+        // Create a new dataset sized for every row
+        DataSet set = new DataSet(INPUT_LAYER_NODE_AMOUNT, 10, DATASET_FEATURE_TYPE, dataset.length);
+        // Array reused to hold the input features of every row
+        double[] inputFeatures = new double[INPUT_LAYER_NODE_AMOUNT];
 
         // Add the data to the dataset
         for (int[] row : dataset) {
             // The label is the last element in the row
             int label = row[row.length - 1];
 
-            // Initialize an array to hold the input features
-            double[] inputFeatures = new double[row.length - 1];
-
             // Store the input features in the array
             for (int featureIndex = 0; featureIndex < row.length - 1; featureIndex++) {
                 inputFeatures[featureIndex] = row[featureIndex];
             }
 
-            // Initialize an array to hold the output (label) for the input features
-            double[] output = new double[10];
-
-            // Set the output (label) for the input features
-            output[label] = 1d;
-
-            // Add the input features and the output to the dataset
-            set.addData(inputFeatures, output);
+            // Add the input features and the label to the dataset
+            set.addData(inputFeatures, label);
         }
         return set;
 
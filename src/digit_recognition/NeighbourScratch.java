@@ -0,0 +1,73 @@
+package digit_recognition;
+
+import java.util.Arrays;
+
+/**
+ * Class holding the reusable buffers of a k-nearest neighbours query. Keeping
+ * one instance per thread lets a query run without allocating anything.
+ *
+ * The neighbours are kept sorted in fixed-size primitive arrays, ordered by
+ * distance and then by training index, so ties are always broken the same way.
+ */
+public class NeighbourScratch {
+    // Neighbours found so far, nearest first, with their distances
+    int[] neighbourIndices = new int[0];
+    double[] neighbourDistances = new double[0];
+    int found;
+    // Vote histogram with one entry per label
+    final int[] labelCounts;
+    // Query in the layout of the quantized store
+    byte[] quantizedQuery = new byte[0];
+    // Offset from the query to the current cell of a k-d tree along every dimension
+    double[] offsets = new double[0];
+    double[] query;
+
+    /**
+     * Constructor for the NeighbourScratch class.
+     *
+     * @param labelCount the number of labels
+     */
+    public NeighbourScratch(int labelCount) {
+        this.labelCounts = new int[labelCount];
+    }
+
+    /**
+     * Prepares the buffers for a new query.
+     *
+     * @param k          the number of neighbours to find
+     * @param dimensions the number of dimensions of the query
+     */
+    void reset(int k, int dimensions) {
+        // The buffers are only replaced when the sizes change
+        if (neighbourIndices.length != k) {
+            neighbourIndices = new int[k];
+            neighbourDistances = new double[k];
+        }
+        if (offsets.length != dimensions) {
+            offsets = new double[dimensions];
+            quantizedQuery = new byte[dimensions];
+        } else {
+            Arrays.fill(offsets, 0.0);
+        }
+        found = 0;
+    }
+
+    /**
+     * Gets the number of neighbours found by the last query.
+     *
+     * @return the number of neighbours
+     */
+    public int getFound() {
+        return found;
+    }
+
+    /**
+     * Gets the training index of a neighbour found by the last query.
+     *
+     * @param position the position of the neighbour, 0 being the nearest
+     * @return the training index
+     */
+    public int getNeighbourIndex(int position) {
+        return neighbourIndices[position];
+    }
+}
@@ -0,0 +1,13 @@
+package digit_recognition;
+
+/**
+ * Enum representing the ways the k-nearest neighbours are searched for.
+ */
+public enum NeighbourSearch {
+    // Distance to every training feature
+    BRUTE_FORCE,
+    // Exact search in a k-d tree built over the training features
+    KD_TREE,
+    // Distance to every training feature stored as bytes, in integer arithmetic
+    QUANTIZED
+}
@@ -1,5 +1,13 @@
 package digit_recognition;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Base class for the network.
  */
@@ -12,18 +20,85 @@ public class NetworkBase {
     public final int NETWORK_SIZE;
 
     private double[][] output;
-    private double[][][] weights;
+    // Weights of each layer stored row-major in a single array, one row per neuron
+    private double[][] weights;
     private double[][] bias;
 
     private double[][] error_signal;
     private double[][] output_derivative;
+    // Activation function of every layer after the input, shared with the single precision network
+    private final Activation[] activations;
+    // Input of the current sample, copied out of the dataset
+    private final double[] inputBuffer;
+
+    private final Precision precision;
+    // Source of the initial weights and of the batch order
+    private final SplittableRandom random;
+    // Parameters and activations of a single precision network, null in double precision
+    private final FloatNetwork floatNetwork;
+
+    // Number of samples read at a time when evaluating a streamed set
+    private static final int EVALUATION_CHUNK_SIZE = 1024;
+
+    // Scratch space for mini-batch training, one per worker thread
+    private BatchWorkspace[] workspaces = new BatchWorkspace[0];
+    // Whether training and evaluation print their results
+    private boolean verbose = true;
+    // Step size of the weight updates made by training
+    private double learningRate = MultiLayerPerceptron.LEARNING_RATE;
+    // Rule turning the gradients into weight updates, and its moments, which plain gradient descent does not have
+    private Optimizer optimizer = Optimizer.SGD;
+    private OptimizerState optimizerState;
+    // Change of the learning rate over the epochs, which keeps counting across training runs
+    private LearningRateSchedule schedule = LearningRateSchedule.CONSTANT;
+    private int scheduleEpochs = MultiLayerPerceptron.TRAINING_EPOCHS_VALUE;
+    private int scheduledEpoch;
+    // Learning rate of the epoch being trained
+    private double epochLearningRate = learningRate;
+    // Receiver of the measurements of every epoch, or null
+    private TrainingListener trainingListener;
+    // Phase times of the calling thread for the epoch being trained, null when it is not measured
+    private PhaseTimes epochTimes;
 
     /**
-     * Constructor for the network.
+     * Constructor for the network, computing in double precision.
      *
      * @param NETWORK_LAYER_SIZE the network layer size
      */
     public NetworkBase(int[] NETWORK_LAYER_SIZE) {
+        this(NETWORK_LAYER_SIZE, Precision.DOUBLE);
+    }
+
+    /**
+     * Constructor for the network, with a random seed.
+     *
+     * @param NETWORK_LAYER_SIZE the network layer size
+     * @param precision          the precision the network computes in
+     */
+    public NetworkBase(int[] NETWORK_LAYER_SIZE, Precision precision) {
+        this(NETWORK_LAYER_SIZE, precision, new SplittableRandom());
+    }
+
+    /**
+     * Constructor for the network. The seed decides the initial weights and the
+     * order of the training batches, so the same seed gives the same network.
+     *
+     * @param NETWORK_LAYER_SIZE the network layer size
+     * @param precision          the precision the network computes in
+     * @param seed               the seed of the random source
+     */
+    public NetworkBase(int[] NETWORK_LAYER_SIZE, Precision precision, long seed) {
+        this(NETWORK_LAYER_SIZE, precision, new SplittableRandom(seed));
+    }
+
+    /**
+     * Constructor for the network.
+     *
+     * @param NETWORK_LAYER_SIZE the network layer size
+     * @param precision          the precision the network computes in
+     * @param random             the random source of the network
+     */
+    private NetworkBase(int[] NETWORK_LAYER_SIZE, Precision precision, SplittableRandom random) {
 
         // Sets the network's layer sizes
         this.NETWORK_LAYER_SIZE = NETWORK_LAYER_SIZE;
@@ -33,10 +108,19 @@ public class NetworkBase {
 
         // Initializes the network's parameters based on the layer sizes
         this.output = new double[NETWORK_SIZE][];
-        this.weights = new double[NETWORK_SIZE][][];
+        this.weights = new double[NETWORK_SIZE][];
         this.bias = new double[NETWORK_SIZE][];
         this.error_signal = new double[NETWORK_SIZE][];
         this.output_derivative = new double[NETWORK_SIZE][];
+        this.inputBuffer = new double[INPUT_LAYER_SIZE];
+        this.precision = precision;
+        this.random = random;
+        this.activations = new Activation[NETWORK_SIZE];
+        Arrays.fill(activations, 1, NETWORK_SIZE, Activation.SIGMOID);
+        // A single precision network keeps its own parameters and only uses the
+        // double arrays to hand out its output
+        this.floatNetwork = precision == Precision.FLOAT ? new FloatNetwork(NETWORK_LAYER_SIZE, activations, random)
+                : null;
 
         // Loop through each layer in the network to initialize layer-specific
         // parameters.
@@ -47,18 +131,18 @@ public class NetworkBase {
             this.output_derivative[index] = new double[NETWORK_LAYER_SIZE[index]];
 
             // Initialize the weights and biases for each neuron in the layer.
-            if (index > 0) {
-                this.weights[index] = Utility.buildRandomArray(NETWORK_LAYER_SIZE[index], NETWORK_LAYER_SIZE[index - 1],
+            if (index > 0 && floatNetwork == null) {
+                this.weights[index] = Utility.buildRandomArray(NETWORK_LAYER_SIZE[index] * NETWORK_LAYER_SIZE[index - 1],
                         MultiLayerPerceptron.WEIGHTS_RANGE_SMALLEST,
-                        MultiLayerPerceptron.WEIGHTS_RANGE_BIGGEST);
+                        MultiLayerPerceptron.WEIGHTS_RANGE_BIGGEST, random);
                 this.bias[index] = Utility.buildRandomArray(NETWORK_LAYER_SIZE[index],
-                        MultiLayerPerceptron.BIAS_RANGE_SMALLEST, MultiLayerPerceptron.BIAS_RANGE_BIGGEST);
+                        MultiLayerPerceptron.BIAS_RANGE_SMALLEST, MultiLayerPerceptron.BIAS_RANGE_BIGGEST, random);
             }
         }
     }
 
     /**
-     * Trains the network using the provided dataset.
+     * Trains the network using the provided dataset and the default training mode.
      *
      * @param set       the set
      * @param epochs    the epochs
@@ -67,24 +151,374 @@ public class NetworkBase {
      * @return the accuracy of the network
      */
     public double train(DataSet set, int epochs, int loops, int batchSize) {
-        // Iterates over each epoch
-        for (int epoch = 0; epoch < epochs; epoch++) {
-            for (int loop = 0; loop < loops; loop++) {
-                // Extracts a mini-batch from the training set
-                DataSet batch = set.extractBatch(batchSize);
+        return train(set, epochs, loops, batchSize, MultiLayerPerceptron.TRAINING_MODE);
+    }
+
+    /**
+     * Trains the network using the provided dataset.
+     *
+     * @param set       the set
+     * @param epochs    the epochs
+     * @param loops     the loops
+     * @param batchSize the batch size
+     * @param mode      the training mode
+     * @return the accuracy of the network
+     */
+    public double train(DataSet set, int epochs, int loops, int batchSize, TrainingMode mode) {
+        return train(set, epochs, loops, batchSize, mode, null);
+    }
+
+    /**
+     * Trains the network using the provided dataset, stopping once the scores
+     * on a validation set stop improving.
+     *
+     * @param set       the set
+     * @param epochs    the most epochs to train for
+     * @param loops     the loops
+     * @param batchSize the batch size
+     * @param mode      the training mode
+     * @param stopping  the monitor of the validation scores, or null to train
+     *                  for every epoch
+     * @return the accuracy of the network
+     */
+    public double train(DataSet set, int epochs, int loops, int batchSize, TrainingMode mode,
+            EarlyStopping stopping) {
+        checkTrainingMode(mode);
+        // Parallel modes split the work over a pool with one workspace per thread
+        boolean parallel = mode == TrainingMode.PARALLEL || mode == TrainingMode.HOGWILD;
+        int threads = parallel ? MultiLayerPerceptron.TRAINING_THREADS : 1;
+        if (mode != TrainingMode.STOCHASTIC) {
+            ensureWorkspaces(threads);
+        }
+        ForkJoinPool pool = parallel ? new ForkJoinPool(threads) : null;
+        // Hogwild workers draw their batches at the same time, each from its own sampler
+        BatchSampler[] samplers = new BatchSampler[mode == TrainingMode.HOGWILD ? threads : 1];
+        for (int worker = 0; worker < samplers.length; worker++) {
+            samplers[worker] = new BatchSampler(set, MultiLayerPerceptron.TRAINING_SAMPLING, random.split());
+        }
+        // Weights of the best validation check, restored once training stops
+        ByteBuffer bestParameters = null;
+        if (stopping != null) {
+            stopping.reset();
+            if (stopping.isRestoringBestWeights()) {
+                bestParameters = ByteBuffer.allocate(parameterBytes());
+            }
+        }
+        int epochsTrained = 0;
+        TrainingMeter meter = new TrainingMeter(trainingListener, mode, threads, workerTimes(mode, threads));
+        long startTime = System.nanoTime();
+        try {
+            // Iterates over each epoch
+            while (epochsTrained < epochs) {
+                startEpoch();
+                epochTimes = meter.startEpoch();
+                if (mode == TrainingMode.HOGWILD) {
+                    // Every worker runs its share of the loops and updates the weights without
+                    // locking
+                    pool.invoke(new HogwildTask(samplers, loops, batchSize, 0, threads, threads));
+                } else {
+                    for (int loop = 0; loop < loops; loop++) {
+                        // Draws the next mini-batch of the training set
+                        trainBatch(nextBatch(samplers[0], batchSize, epochTimes), mode, pool);
+                    }
+                }
+                epochsTrained++;
+                epochTimes = null;
+                meter.finishEpoch((long) loops * batchSize);
+                if (stopping != null && stopping.isCheckedAfter(epochsTrained, epochs)
+                        && checkValidation(stopping, epochsTrained, bestParameters)) {
+                    break;
+                }
+            }
+        } finally {
+            epochTimes = null;
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+        meter.finish();
+        // Nothing is restored if no check improved, which only happens when the loss is not a number
+        if (bestParameters != null && stopping.getBestEpoch() > 0 && stopping.getBestEpoch() != epochsTrained) {
+            bestParameters.clear();
+            readParameters(bestParameters);
+        }
+        if (verbose) {
+            UserInterface.printTrainingThroughput((long) epochsTrained * loops * batchSize, elapsedNanos, threads);
+            if (stopping != null) {
+                UserInterface.printEarlyStopping(stopping, epochs);
+            }
+        }
+        double accuracy = evaluate(set);
+        return accuracy;
+    }
+
+    /**
+     * Scores the network on the validation set of a monitor and keeps the
+     * weights if the scores are the best so far.
+     *
+     * @param stopping       the monitor
+     * @param epoch          the number of epochs trained so far
+     * @param bestParameters the buffer holding the best weights, or null if they
+     *                       are not restored
+     * @return true if training should stop
+     */
+    private boolean checkValidation(EarlyStopping stopping, int epoch, ByteBuffer bestParameters) {
+        DataSet validationSet = stopping.getValidationSet();
+        InferenceModel model = snapshot();
+        InferenceModel.Scratch scratch = model.newScratch();
+        Activation outputActivation = activations[NETWORK_SIZE - 1];
+        double loss = 0;
+        int correct = 0;
+        for (int sampleIndex = 0; sampleIndex < validationSet.size(); sampleIndex++) {
+            double[] prediction = model.forward(validationSet.getInput(sampleIndex, inputBuffer, 0), scratch);
+            int label = validationSet.getLabel(sampleIndex);
+            loss += outputActivation.loss(prediction, 0, OUTPUT_LAYER_SIZE, label);
+            if (Utility.returnIndexOfHighestValue(prediction) == label) {
+                correct++;
+            }
+        }
+        if (stopping.record(epoch, loss / validationSet.size(), (double) correct / validationSet.size())
+                && bestParameters != null) {
+            bestParameters.clear();
+            writeParameters(bestParameters);
+        }
+        return stopping.shouldStop();
+    }
+
+    /**
+     * Trains the network on a dataset streamed from its file. Every epoch is one
+     * pass over the file, drawn in shuffled batches from the buffer of the set.
+     *
+     * @param set       the streamed set
+     * @param epochs    the epochs
+     * @param batchSize the batch size
+     * @param mode      the training mode, any but Hogwild
+     * @return the accuracy of the network
+     */
+    public double train(StreamingDataSet set, int epochs, int batchSize, TrainingMode mode) {
+        // Hogwild workers draw their own batches, which needs the whole set in memory
+        if (mode == TrainingMode.HOGWILD) {
+            throw new IllegalArgumentException("Hogwild training needs a dataset held in memory.");
+        }
+        checkTrainingMode(mode);
+        int threads = mode == TrainingMode.PARALLEL ? MultiLayerPerceptron.TRAINING_THREADS : 1;
+        if (mode != TrainingMode.STOCHASTIC) {
+            ensureWorkspaces(threads);
+        }
+        ForkJoinPool pool = mode == TrainingMode.PARALLEL ? new ForkJoinPool(threads) : null;
+        TrainingMeter meter = new TrainingMeter(trainingListener, mode, threads, workerTimes(mode, threads));
+        long samples = 0;
+        long startTime = System.nanoTime();
+        try {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                startEpoch();
+                epochTimes = meter.startEpoch();
+                set.rewind();
+                long epochSamples = 0;
+                DataSet batch;
+                // Reading and shuffling the file counts as drawing the batches
+                while ((batch = nextBatch(set, batchSize, epochTimes)).size() > 0) {
+                    trainBatch(batch, mode, pool);
+                    epochSamples += batch.size();
+                }
+                samples += epochSamples;
+                epochTimes = null;
+                meter.finishEpoch(epochSamples);
+            }
+        } finally {
+            epochTimes = null;
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        meter.finish();
+        if (verbose) {
+            UserInterface.printTrainingThroughput(samples, System.nanoTime() - startTime, threads);
+        }
+        double accuracy = evaluate(set);
+        return accuracy;
+    }
+
+    /**
+     * Moves the learning rate on to the next epoch of the schedule.
+     */
+    private void startEpoch() {
+        epochLearningRate = schedule.rate(learningRate, scheduledEpoch, scheduleEpochs);
+        scheduledEpoch++;
+    }
+
+    /**
+     * Gets the phase times of the workspaces used by a training mode, which
+     * the epoch measurements add to those of the calling thread.
+     *
+     * @param mode    the training mode
+     * @param threads the number of training threads
+     * @return the phase times of every workspace in use
+     */
+    private PhaseTimes[] workerTimes(TrainingMode mode, int threads) {
+        // Stochastic training runs on the calling thread and mini-batches on its first workspace
+        if (mode != TrainingMode.PARALLEL && mode != TrainingMode.HOGWILD) {
+            return new PhaseTimes[0];
+        }
+        PhaseTimes[] times = new PhaseTimes[threads];
+        for (int worker = 0; worker < threads; worker++) {
+            times[worker] = workspaces[worker].times;
+        }
+        return times;
+    }
+
+    /**
+     * Draws the next batch from a sampler, timing it if the epoch is measured.
+     *
+     * @param sampler   the sampler
+     * @param batchSize the batch size
+     * @param times     the phase times to add to, or null
+     * @return the batch
+     */
+    private static DataSet nextBatch(BatchSampler sampler, int batchSize, PhaseTimes times) {
+        if (times == null) {
+            return sampler.nextBatch(batchSize);
+        }
+        long start = System.nanoTime();
+        DataSet batch = sampler.nextBatch(batchSize);
+        times.addSampling(System.nanoTime() - start);
+        return batch;
+    }
+
+    /**
+     * Reads the next batch of a streamed set, timing it if the epoch is
+     * measured.
+     *
+     * @param set       the streamed set
+     * @param batchSize the batch size
+     * @param times     the phase times to add to, or null
+     * @return the batch, empty at the end of the file
+     */
+    private static DataSet nextBatch(StreamingDataSet set, int batchSize, PhaseTimes times) {
+        if (times == null) {
+            return set.nextBatch(batchSize);
+        }
+        long start = System.nanoTime();
+        DataSet batch = set.nextBatch(batchSize);
+        times.addSampling(System.nanoTime() - start);
+        return batch;
+    }
+
+    /**
+     * Trains the network on one batch in the given mode.
+     *
+     * @param batch the batch
+     * @param mode  the training mode, any but Hogwild
+     * @param pool  the pool running the workers in parallel mode
+     */
+    private void trainBatch(DataSet batch, TrainingMode mode, ForkJoinPool pool) {
+        switch (mode) {
+            case MINI_BATCH:
+                // Single weight update from the gradients of the whole batch
+                trainMiniBatch(batch, epochLearningRate);
+                break;
+            case PARALLEL:
+                // Single weight update from gradients computed by all workers
+                trainParallelBatch(batch, epochLearningRate, pool);
+                break;
+            default:
                 // Iterates over each data point in the batch
-                for (int b = 0; b < batchSize; b++) {
+                for (int b = 0; b < batch.size(); b++) {
+                    if (epochTimes != null) {
+                        trainSampleMeasured(batch, b, epochTimes);
+                        continue;
+                    }
                     // Forward pass to compute the network's prediction
-                    forward(batch.getInput(b));
+                    forward(batch.getInput(b, inputBuffer, 0));
                     // Backward pass to compute gradients based on the error
-                    backward(batch.getOutput(b));
+                    backward(batch.getLabel(b));
                     // Update weights and biases based on gradients
-                    updateWeights(MultiLayerPerceptron.LEARNING_RATE);
+                    updateWeights(epochLearningRate);
                 }
-            }
         }
-        double accuracy = evaluate(set);
-        return accuracy;
+    }
+
+    /**
+     * Trains the network on one sample of a batch, timing every phase and
+     * adding the loss of the sample.
+     *
+     * @param batch the batch
+     * @param index the index of the sample
+     * @param times the phase times to add to
+     */
+    private void trainSampleMeasured(DataSet batch, int index, PhaseTimes times) {
+        int label = batch.getLabel(index);
+        long start = System.nanoTime();
+        double[] prediction = forward(batch.getInput(index, inputBuffer, 0));
+        long forwarded = System.nanoTime();
+        backward(label);
+        long backwarded = System.nanoTime();
+        updateWeights(epochLearningRate);
+        long updated = System.nanoTime();
+        times.addPhases(forwarded - start, backwarded - forwarded, updated - backwarded);
+        // The update leaves the prediction as it was, so the loss is taken outside the timed phases
+        times.addLoss(activations[NETWORK_SIZE - 1].loss(prediction, 0, OUTPUT_LAYER_SIZE, label));
+    }
+
+    /**
+     * Trains the network on a whole batch at once. Every layer is computed for
+     * all samples with one matrix product, the gradients are summed over the
+     * batch and the weights are updated once with the averaged gradient.
+     *
+     * @param batch        the batch
+     * @param learningRate the learning rate
+     */
+    public void trainMiniBatch(DataSet batch, double learningRate) {
+        checkTrainingMode(TrainingMode.MINI_BATCH);
+        int batchSize = batch.size();
+        if (batchSize == 0) {
+            return;
+        }
+        ensureWorkspaces(1);
+        PhaseTimes times = epochTimes;
+        workspaces[0].computeGradients(batch, 0, batchSize, times);
+        applyGradients(learningRate, batchSize, times);
+    }
+
+    /**
+     * Trains the network on a whole batch split across the workers of a pool.
+     * Each worker computes the gradients of its part of the batch in its own
+     * workspace, the gradients are combined with a tree reduction and the
+     * weights are updated once with the averaged gradient.
+     *
+     * @param batch        the batch
+     * @param learningRate the learning rate
+     * @param pool         the pool running the workers
+     */
+    public void trainParallelBatch(DataSet batch, double learningRate, ForkJoinPool pool) {
+        checkTrainingMode(TrainingMode.PARALLEL);
+        int batchSize = batch.size();
+        if (batchSize == 0) {
+            return;
+        }
+        ensureWorkspaces(pool.getParallelism());
+        int chunks = Math.min(pool.getParallelism(), batchSize);
+        pool.invoke(new GradientTask(batch, 0, chunks, chunks));
+        applyGradients(learningRate, batchSize, epochTimes);
+    }
+
+    /**
+     * Updates the weights with the gradients summed in the first workspace,
+     * timing the update if the epoch is measured.
+     *
+     * @param learningRate the learning rate
+     * @param samples      the number of samples the gradients are summed over
+     * @param times        the phase times to add to, or null
+     */
+    private void applyGradients(double learningRate, int samples, PhaseTimes times) {
+        if (times == null) {
+            workspaces[0].applyGradients(learningRate, samples);
+            return;
+        }
+        long start = System.nanoTime();
+        workspaces[0].applyGradients(learningRate, samples);
+        times.addPhases(0, 0, System.nanoTime() - start);
     }
 
     /**
@@ -95,46 +529,143 @@ public class NetworkBase {
      */
     public double evaluate(DataSet dataSet) {
         int correct = 0;
+        // Evaluation only needs the outputs, not the derivatives computed for training
+        InferenceModel model = snapshot();
+        InferenceModel.Scratch scratch = model.newScratch();
         // Iterates over each data point in the dataset
         for (int sampleIndex = 0; sampleIndex < dataSet.size(); sampleIndex++) {
-            // Forward pass to compute the network's prediction
-            double[] output = forward(dataSet.getInput(sampleIndex));
-            // Determines the index of the highest output value
-            double predictedIndex = Utility.returnIndexOfHighestValue(output);
-            double actualIndex = Utility.returnIndexOfHighestValue(dataSet.getOutput(sampleIndex));
+            // Forward pass to determine the index of the highest output value
+            int predictedIndex = model.classify(dataSet.getInput(sampleIndex, inputBuffer, 0), scratch);
             // Increment correct count if prediction matches the actual value
-            if (predictedIndex == actualIndex) {
+            if (predictedIndex == dataSet.getLabel(sampleIndex)) {
                 correct++;
             }
         }
         // Prints the evaluation results
-        double accuracy = UserInterface.printFinalResults(correct, dataSet.size());
-        return accuracy;
+        return reportAccuracy(correct, dataSet.size());
+    }
+
+    /**
+     * Evaluates the network on a dataset streamed from its file, making one
+     * whole pass over the file.
+     *
+     * @param set the streamed set
+     * @return the accuracy of the network
+     */
+    public double evaluate(StreamingDataSet set) {
+        int correct = 0;
+        int total = 0;
+        InferenceModel model = snapshot();
+        InferenceModel.Scratch scratch = model.newScratch();
+        set.rewind();
+        DataSet chunk;
+        while ((chunk = set.nextBatch(EVALUATION_CHUNK_SIZE)).size() > 0) {
+            for (int sampleIndex = 0; sampleIndex < chunk.size(); sampleIndex++) {
+                int predictedIndex = model.classify(chunk.getInput(sampleIndex, inputBuffer, 0), scratch);
+                if (predictedIndex == chunk.getLabel(sampleIndex)) {
+                    correct++;
+                }
+            }
+            total += chunk.size();
+        }
+        // Prints the evaluation results
+        return reportAccuracy(correct, total);
     }
 
     /**
-     * Performs a forward pass through the network.
+     * Computes the accuracy of an evaluation, printing it unless the network is
+     * quiet.
+     *
+     * @param correct the number of correct predictions
+     * @param total   the number of predictions
+     * @return the accuracy
+     */
+    private double reportAccuracy(int correct, int total) {
+        if (verbose) {
+            return UserInterface.printFinalResults(correct, total);
+        }
+        return (double) correct / total;
+    }
+
+    /**
+     * Sets whether training and evaluation print their throughput and results.
+     * Networks trained side by side are made quiet so their output does not
+     * interleave.
+     *
+     * @param verbose true to print, which is the default
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets the listener receiving the measurements of every training epoch:
+     * throughput, loss, time per phase and memory allocated. Epochs are only
+     * measured when there is a listener or a Flight Recorder recording with the
+     * epoch event enabled, so an unobserved network trains at full speed.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setTrainingListener(TrainingListener listener) {
+        this.trainingListener = listener;
+    }
+
+    /**
+     * Gets the listener receiving the measurements of every training epoch.
+     *
+     * @return the listener, or null if there is none
+     */
+    public TrainingListener getTrainingListener() {
+        return trainingListener;
+    }
+
+    /**
+     * Takes an immutable copy of the parameters of the network, which can
+     * classify inputs from many threads at once while this network keeps
+     * training.
+     *
+     * @return the snapshot of the network
+     */
+    public InferenceModel snapshot() {
+        if (floatNetwork != null) {
+            return floatNetwork.snapshot();
+        }
+        return new InferenceModel(NETWORK_LAYER_SIZE, activations, weights, bias);
+    }
+
+    /**
+     * Performs a forward pass through the network, keeping the derivatives for
+     * the backward pass. The activations are stored in the network, so it must
+     * not be called from several threads at once; use a {@link #snapshot()} to
+     * share a trained network between threads.
      *
      * @param input the input
-     * @return the double[]
+     * @return the output of the last layer, overwritten by the next call
      */
     public double[] forward(double[] input) {
+        if (floatNetwork != null) {
+            floatNetwork.forward(input, output[NETWORK_SIZE - 1]);
+            return output[NETWORK_SIZE - 1];
+        }
         // Sets the input layer's outputs to the input features
         this.output[0] = input;
         // Propagates the data forward through each layer
         for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+            int previousSize = NETWORK_LAYER_SIZE[layer - 1];
             for (int neuron = 0; neuron < NETWORK_LAYER_SIZE[layer]; neuron++) {
-                double sum = 0.0;
                 // Computes the weighted sum of inputs for the current neuron
-                for (int previousNeuron = 0; previousNeuron < NETWORK_LAYER_SIZE[layer - 1]; previousNeuron++) {
-                    sum += output[layer - 1][previousNeuron] *
-                            weights[layer][neuron][previousNeuron];
+                double sum = VectorKernels.dot(weights[layer], neuron * previousSize, output[layer - 1], 0,
+                        previousSize);
+                // Adds the bias
+                output[layer][neuron] = sum + bias[layer][neuron];
+            }
+            // Applies the activation function, which may depend on the whole layer
+            activations[layer].activate(output[layer], 0, NETWORK_LAYER_SIZE[layer]);
+            // The output layer goes through the loss instead, which needs no derivative of its own
+            if (layer < NETWORK_SIZE - 1) {
+                for (int neuron = 0; neuron < NETWORK_LAYER_SIZE[layer]; neuron++) {
+                    output_derivative[layer][neuron] = activations[layer].derivative(output[layer][neuron]);
                 }
-                // Adds the bias and applies the activation function
-                sum += bias[layer][neuron];
-                output[layer][neuron] = sigmoidFunction(sum);
-                output_derivative[layer][neuron] = output[layer][neuron] * (1 - output[layer][neuron]);
-
             }
         }
         // Returns the output of the last layer as the network's prediction
@@ -142,34 +673,37 @@ public class NetworkBase {
     }
 
     /**
-     * Performs a backward pass through the network, computing gradients
+     * Performs a backward pass through the network, computing gradients. It is
+     * package-private so that the benchmarks can time it on its own.
      *
-     * @param target the target
+     * @param label the index of the 1 in the one-hot target
      */
-    private void backward(double[] target) {
-        // Iterates over each layer and neuron to compute the error signal
-        for (int layer = NETWORK_SIZE - 1; layer > 0; layer--) {
-            // Iterates over each neuron in the layer
-            for (int neuron = 0; neuron < NETWORK_LAYER_SIZE[layer]; neuron++) {
-                // Computes the error signal for the current neuron
-                if (layer == NETWORK_SIZE - 1) {
-                    // Applies the derivative of the activation function
-                    double derivative = output_derivative[layer][neuron];
-                    // Computes the difference between the output and the target
-                    double difference = output[layer][neuron] - target[neuron];
-                    error_signal[layer][neuron] = difference * derivative;
-                } else {
-                    // Applies the derivative of the activation function
-                    double derivative = output_derivative[layer][neuron];
-                    // Initializes the sum of errors for the current neuron
-                    double sum = 0.0;
-                    // Computes the weighted sum of errors from the next layer
-                    for (int nextNeuron = 0; nextNeuron < NETWORK_LAYER_SIZE[layer + 1]; nextNeuron++) {
-                        sum += weights[layer + 1][nextNeuron][neuron] * error_signal[layer + 1][nextNeuron];
-                    }
-                    // Applies the derivative of the activation function
-                    error_signal[layer][neuron] = sum * derivative;
-                }
+    void backward(int label) {
+        if (floatNetwork != null) {
+            floatNetwork.backward(label);
+            return;
+        }
+        // Computes the error signal of the output layer
+        int outputLayer = NETWORK_SIZE - 1;
+        for (int neuron = 0; neuron < OUTPUT_LAYER_SIZE; neuron++) {
+            // Derives the loss of the output and the target through the activation function
+            error_signal[outputLayer][neuron] = activations[outputLayer].outputError(output[outputLayer][neuron],
+                    neuron == label ? 1 : 0);
+        }
+        // Propagates the error signal back through the hidden layers
+        for (int layer = outputLayer - 1; layer > 0; layer--) {
+            int layerSize = NETWORK_LAYER_SIZE[layer];
+            double[] errors = error_signal[layer];
+            Arrays.fill(errors, 0.0);
+            // Accumulates the weighted errors of the next layer row by row so that the
+            // weights are read contiguously
+            for (int nextNeuron = 0; nextNeuron < NETWORK_LAYER_SIZE[layer + 1]; nextNeuron++) {
+                VectorKernels.axpy(error_signal[layer + 1][nextNeuron], weights[layer + 1], nextNeuron * layerSize,
+                        errors, 0, layerSize);
+            }
+            // Applies the derivative of the activation function
+            for (int neuron = 0; neuron < layerSize; neuron++) {
+                errors[neuron] *= output_derivative[layer][neuron];
             }
         }
     }
@@ -181,30 +715,587 @@ public class NetworkBase {
      * @param learningRate the learning rate
      */
     public void updateWeights(double learningRate) {
+        if (floatNetwork != null) {
+            floatNetwork.updateWeights((float) learningRate);
+            return;
+        }
+        if (optimizerState != null) {
+            updateWeightsWithOptimizer(learningRate);
+            return;
+        }
         // Iterates over each layer and neuron to adjust weights and biases
         for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+            int previousSize = NETWORK_LAYER_SIZE[layer - 1];
             for (int neuron = 0; neuron < NETWORK_LAYER_SIZE[layer]; neuron++) {
                 // Computes the delta for the current neuron
                 double delta = -learningRate * error_signal[layer][neuron];
                 // Adjusts the bias for the current neuron
                 bias[layer][neuron] += delta;
-                // Iterates over each neuron in the previous layer to adjust the weights
-                for (int previousNeuron = 0; previousNeuron < NETWORK_LAYER_SIZE[layer - 1]; previousNeuron++) {
-                    // Adjusts the weights based on the error signal and the output of the previous
-                    // layer
-                    weights[layer][neuron][previousNeuron] += delta * output[layer - 1][previousNeuron];
+                // Adjusts the weights based on the error signal and the output of the previous
+                // layer
+                VectorKernels.axpy(delta, output[layer - 1], 0, weights[layer], neuron * previousSize, previousSize);
+            }
+        }
+    }
+
+    /**
+     * Updates the weights and biases of the network with the optimizer from the
+     * gradient of the last sample.
+     *
+     * @param learningRate the learning rate
+     */
+    private void updateWeightsWithOptimizer(double learningRate) {
+        optimizerState.nextStep();
+        for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+            int previousSize = NETWORK_LAYER_SIZE[layer - 1];
+            for (int neuron = 0; neuron < NETWORK_LAYER_SIZE[layer]; neuron++) {
+                // The gradient of the weights of a neuron is its error signal times the output of the previous layer
+                optimizerState.updateWeights(layer, weights[layer], neuron * previousSize, learningRate,
+                        error_signal[layer][neuron], output[layer - 1], 0, previousSize);
+                optimizerState.updateBias(layer, bias[layer], neuron, learningRate, 1, error_signal[layer], neuron,
+                        1);
+            }
+        }
+    }
+
+    /**
+     * Saves the network to a model file, from which it can be loaded without
+     * training it again.
+     *
+     * @param filePath path to the model file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(String filePath) throws IOException {
+        ModelFile.write(this, filePath);
+    }
+
+    /**
+     * Loads a network from a model file. The loaded network gives exactly the
+     * same predictions as the network that was saved.
+     *
+     * @param filePath path to the model file
+     * @return the network
+     * @throws IOException if the file cannot be read or is not a valid model
+     */
+    public static NetworkBase load(String filePath) throws IOException {
+        return ModelFile.read(filePath);
+    }
+
+    /**
+     * Writes the weights and then the biases of every layer to a buffer, in the
+     * precision of the network.
+     *
+     * @param buffer the buffer
+     */
+    void writeParameters(ByteBuffer buffer) {
+        if (floatNetwork != null) {
+            floatNetwork.writeParameters(buffer);
+            return;
+        }
+        for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+            buffer.asDoubleBuffer().put(weights[layer]).put(bias[layer]);
+            buffer.position(buffer.position() + (weights[layer].length + bias[layer].length) * Double.BYTES);
+        }
+    }
+
+    /**
+     * Reads the weights and then the biases of every layer from a buffer, in the
+     * precision of the network.
+     *
+     * @param buffer the buffer
+     */
+    void readParameters(ByteBuffer buffer) {
+        if (floatNetwork != null) {
+            floatNetwork.readParameters(buffer);
+            return;
+        }
+        for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+            buffer.asDoubleBuffer().get(weights[layer]).get(bias[layer]);
+            buffer.position(buffer.position() + (weights[layer].length + bias[layer].length) * Double.BYTES);
+        }
+    }
+
+    /**
+     * Computes the size of the weights and biases written by
+     * {@link #writeParameters(ByteBuffer)}.
+     *
+     * @return the size in bytes
+     */
+    private int parameterBytes() {
+        long parameters = 0;
+        for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+            parameters += (long) NETWORK_LAYER_SIZE[layer] * (NETWORK_LAYER_SIZE[layer - 1] + 1);
+        }
+        return Math.toIntExact(parameters * (floatNetwork != null ? Float.BYTES : Double.BYTES));
+    }
+
+    /**
+     * Sets the learning rate used by training, which defaults to the learning
+     * rate of the application. Changing the optimizer does not change it.
+     *
+     * @param learningRate the learning rate
+     */
+    public void setLearningRate(double learningRate) {
+        if (!(learningRate > 0)) {
+            throw new IllegalArgumentException("The learning rate must be positive");
+        }
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Gets the learning rate used by training.
+     *
+     * @return the learning rate
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * Sets the rule turning the gradients into weight updates, which defaults
+     * to plain gradient descent. The moments of the previous optimizer are
+     * dropped, and those of the new one start at zero. Only plain gradient
+     * descent trains in single precision or in Hogwild mode.
+     *
+     * @param optimizer the optimizer
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        // Single precision networks keep no moments, so they only train with plain gradient descent
+        if (floatNetwork != null && optimizer != Optimizer.SGD) {
+            throw new IllegalArgumentException(optimizer + " is only available in double precision.");
+        }
+        this.optimizer = optimizer;
+        this.optimizerState = optimizer == Optimizer.SGD ? null : new OptimizerState(optimizer, NETWORK_LAYER_SIZE);
+    }
+
+    /**
+     * Gets the rule turning the gradients into weight updates.
+     *
+     * @return the optimizer
+     */
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Sets how the learning rate changes over the epochs, which defaults to a
+     * constant rate. The epochs are counted across training runs, so a network
+     * trained a few epochs at a time follows the same schedule as one trained
+     * in a single run, and the count starts over here.
+     *
+     * @param schedule the schedule
+     * @param epochs   the number of epochs the schedule spans
+     */
+    public void setLearningRateSchedule(LearningRateSchedule schedule, int epochs) {
+        if (epochs < 1) {
+            throw new IllegalArgumentException("The schedule must span at least one epoch");
+        }
+        this.schedule = schedule;
+        this.scheduleEpochs = epochs;
+        this.scheduledEpoch = 0;
+    }
+
+    /**
+     * Gets how the learning rate changes over the epochs.
+     *
+     * @return the schedule
+     */
+    public LearningRateSchedule getLearningRateSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Sets the activation function of a layer, which defaults to the sigmoid.
+     * The softmax can only be given to the output layer, which is then trained
+     * on the cross-entropy instead of the squared error.
+     *
+     * @param layer      the layer, from 1 for the first hidden layer to the
+     *                   output layer
+     * @param activation the activation function
+     */
+    public void setActivation(int layer, Activation activation) {
+        if (layer < 1 || layer >= NETWORK_SIZE) {
+            throw new IllegalArgumentException("The network has no layer " + layer + " after its input");
+        }
+        if (activation.isLayerWide() && layer != NETWORK_SIZE - 1) {
+            throw new IllegalArgumentException("The softmax can only be the activation of the output layer");
+        }
+        activations[layer] = activation;
+    }
+
+    /**
+     * Gets the activation function of a layer.
+     *
+     * @param layer the layer, from 1 for the first hidden layer to the output
+     *              layer
+     * @return the activation function
+     */
+    public Activation getActivation(int layer) {
+        if (layer < 1 || layer >= NETWORK_SIZE) {
+            throw new IllegalArgumentException("The network has no layer " + layer + " after its input");
+        }
+        return activations[layer];
+    }
+
+    /**
+     * Gets the precision the network computes in.
+     *
+     * @return the precision
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Checks that the network can be trained in a mode.
+     *
+     * @param mode the training mode
+     */
+    private void checkTrainingMode(TrainingMode mode) {
+        // The batched passes and their workspaces only exist in double precision
+        if (precision == Precision.FLOAT && mode != TrainingMode.STOCHASTIC) {
+            throw new IllegalArgumentException(mode + " training is only available in double precision.");
+        }
+        // Hogwild workers update the weights at the same time without locking, which only suits plain gradient
+        // descent: the step count and the moments of the other optimizers would be lost in the races
+        if (mode == TrainingMode.HOGWILD && optimizer != Optimizer.SGD) {
+            throw new IllegalArgumentException("Hogwild training is only available with plain gradient descent.");
+        }
+    }
+
+    /**
+     * Makes sure there is a workspace for every worker thread.
+     *
+     * @param count the number of workspaces
+     */
+    private void ensureWorkspaces(int count) {
+        if (workspaces.length >= count) {
+            return;
+        }
+        BatchWorkspace[] extended = Arrays.copyOf(workspaces, count);
+        for (int index = workspaces.length; index < count; index++) {
+            extended[index] = new BatchWorkspace();
+        }
+        workspaces = extended;
+    }
+
+    /**
+     * Inner class holding the activations, error signals and gradients of one
+     * worker. Every row of the activation and error buffers belongs to one sample.
+     */
+    private class BatchWorkspace {
+        private int capacity;
+        private double[][] output;
+        private double[][] error_signal;
+        private double[][] weight_gradient;
+        private double[][] bias_gradient;
+        // Phase times of the thread using the workspace in parallel modes
+        private final PhaseTimes times = new PhaseTimes();
+
+        // Constructor for the BatchWorkspace class
+        BatchWorkspace() {
+            weight_gradient = new double[NETWORK_SIZE][];
+            bias_gradient = new double[NETWORK_SIZE][];
+            for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+                weight_gradient[layer] = new double[weights[layer].length];
+                bias_gradient[layer] = new double[NETWORK_LAYER_SIZE[layer]];
+            }
+        }
+
+        /**
+         * Computes the summed gradients of a range of samples of the batch.
+         *
+         * @param batch the batch
+         * @param from  the first sample (inclusive)
+         * @param to    the last sample (exclusive)
+         * @param times the phase times to add to, or null if the epoch is not
+         *              measured
+         */
+        void computeGradients(DataSet batch, int from, int to, PhaseTimes times) {
+            int batchSize = to - from;
+            ensureCapacity(batchSize);
+            long start = times == null ? 0 : System.nanoTime();
+            // Copies the inputs into the rows of the input layer
+            for (int sample = 0; sample < batchSize; sample++) {
+                batch.getInput(from + sample, output[0], sample * INPUT_LAYER_SIZE);
+            }
+            forward(batchSize);
+            long forwarded = times == null ? 0 : System.nanoTime();
+            backward(batch, from, batchSize);
+            // Sums the gradients of every sample
+            for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+                int layerSize = NETWORK_LAYER_SIZE[layer];
+                Arrays.fill(weight_gradient[layer], 0.0);
+                Arrays.fill(bias_gradient[layer], 0.0);
+                VectorKernels.multiplyTransposedFirstAndAdd(error_signal[layer], output[layer - 1],
+                        weight_gradient[layer], layerSize, NETWORK_LAYER_SIZE[layer - 1], batchSize);
+                for (int sample = 0; sample < batchSize; sample++) {
+                    VectorKernels.axpy(1.0, error_signal[layer], sample * layerSize, bias_gradient[layer], 0,
+                            layerSize);
+                }
+            }
+            if (times != null) {
+                times.addPhases(forwarded - start, System.nanoTime() - forwarded, 0);
+                addLosses(batch, from, batchSize, times);
+            }
+        }
+
+        /**
+         * Adds the loss of every sample of the last forward pass.
+         *
+         * @param batch     the batch holding the targets
+         * @param from      the first sample of the batch
+         * @param batchSize the number of samples
+         * @param times     the phase times to add to
+         */
+        private void addLosses(DataSet batch, int from, int batchSize, PhaseTimes times) {
+            double[] prediction = output[NETWORK_SIZE - 1];
+            Activation outputActivation = activations[NETWORK_SIZE - 1];
+            for (int sample = 0; sample < batchSize; sample++) {
+                times.addLoss(outputActivation.loss(prediction, sample * OUTPUT_LAYER_SIZE, OUTPUT_LAYER_SIZE,
+                        batch.getLabel(from + sample)));
+            }
+        }
+
+        /**
+         * Adds the gradients of another workspace to the gradients of this one.
+         *
+         * @param other the other workspace
+         */
+        void addGradients(BatchWorkspace other) {
+            for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+                VectorKernels.axpy(1.0, other.weight_gradient[layer], 0, weight_gradient[layer], 0,
+                        weight_gradient[layer].length);
+                VectorKernels.axpy(1.0, other.bias_gradient[layer], 0, bias_gradient[layer], 0,
+                        bias_gradient[layer].length);
+            }
+        }
+
+        /**
+         * Updates the weights and biases of the network with the gradients
+         * averaged over the samples.
+         *
+         * @param learningRate the learning rate
+         * @param samples      the number of samples the gradients are summed over
+         */
+        void applyGradients(double learningRate, int samples) {
+            if (optimizerState == null) {
+                double scale = -learningRate / samples;
+                for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+                    VectorKernels.axpy(scale, weight_gradient[layer], 0, weights[layer], 0, weights[layer].length);
+                    VectorKernels.axpy(scale, bias_gradient[layer], 0, bias[layer], 0, bias[layer].length);
+                }
+                return;
+            }
+            optimizerState.nextStep();
+            double scale = 1D / samples;
+            for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+                optimizerState.updateWeights(layer, weights[layer], 0, learningRate, scale, weight_gradient[layer], 0,
+                        weights[layer].length);
+                optimizerState.updateBias(layer, bias[layer], 0, learningRate, scale, bias_gradient[layer], 0,
+                        bias[layer].length);
+            }
+        }
+
+        /**
+         * Performs a forward pass of the samples through the network.
+         *
+         * @param batchSize the number of samples
+         */
+        private void forward(int batchSize) {
+            for (int layer = 1; layer < NETWORK_SIZE; layer++) {
+                int layerSize = NETWORK_LAYER_SIZE[layer];
+                double[] layerOutput = output[layer];
+                // Computes the weighted sums of every sample and neuron in one product
+                VectorKernels.multiplyTransposed(output[layer - 1], weights[layer], layerOutput, batchSize,
+                        layerSize, NETWORK_LAYER_SIZE[layer - 1]);
+                // Adds the bias and applies the activation function
+                for (int sample = 0; sample < batchSize; sample++) {
+                    for (int neuron = 0; neuron < layerSize; neuron++) {
+                        layerOutput[sample * layerSize + neuron] += bias[layer][neuron];
+                    }
+                    activations[layer].activate(layerOutput, sample * layerSize, layerSize);
+                }
+            }
+        }
+
+        /**
+         * Performs a backward pass of the samples through the network.
+         *
+         * @param batch     the batch holding the targets
+         * @param from      the first sample of the batch
+         * @param batchSize the number of samples
+         */
+        private void backward(DataSet batch, int from, int batchSize) {
+            // Computes the error signal of the output layer
+            int outputLayer = NETWORK_SIZE - 1;
+            Activation outputActivation = activations[outputLayer];
+            for (int sample = 0; sample < batchSize; sample++) {
+                int label = batch.getLabel(from + sample);
+                for (int neuron = 0; neuron < OUTPUT_LAYER_SIZE; neuron++) {
+                    int index = sample * OUTPUT_LAYER_SIZE + neuron;
+                    error_signal[outputLayer][index] = outputActivation.outputError(output[outputLayer][index],
+                            neuron == label ? 1 : 0);
+                }
+            }
+            // Propagates the error signal back through the hidden layers
+            for (int layer = outputLayer - 1; layer > 0; layer--) {
+                int layerSize = NETWORK_LAYER_SIZE[layer];
+                double[] errors = error_signal[layer];
+                VectorKernels.multiply(error_signal[layer + 1], weights[layer + 1], errors, batchSize, layerSize,
+                        NETWORK_LAYER_SIZE[layer + 1]);
+                // Applies the derivative of the activation function
+                Activation activation = activations[layer];
+                for (int index = 0; index < batchSize * layerSize; index++) {
+                    errors[index] *= activation.derivative(output[layer][index]);
                 }
             }
         }
+
+        /**
+         * Makes sure the buffers can hold the given number of samples.
+         *
+         * @param batchSize the number of samples
+         */
+        private void ensureCapacity(int batchSize) {
+            if (batchSize <= capacity) {
+                return;
+            }
+            output = new double[NETWORK_SIZE][];
+            error_signal = new double[NETWORK_SIZE][];
+            for (int layer = 0; layer < NETWORK_SIZE; layer++) {
+                output[layer] = new double[batchSize * NETWORK_LAYER_SIZE[layer]];
+                error_signal[layer] = new double[batchSize * NETWORK_LAYER_SIZE[layer]];
+            }
+            capacity = batchSize;
+        }
+    }
+
+    /**
+     * Reads the memory allocated so far by the current thread if it belongs to
+     * a pool. Tasks may also run on the calling thread while it waits for them,
+     * and its allocations are already counted for the whole epoch.
+     *
+     * @return the number of bytes, or -1 if the thread is not a pool thread or
+     *         the virtual machine does not count them
+     */
+    private static long poolThreadAllocatedBytes() {
+        return Thread.currentThread() instanceof ForkJoinWorkerThread ? PhaseTimes.currentThreadAllocatedBytes()
+                : -1;
     }
 
     /**
-     * Sigmoid function.
+     * Adds the memory allocated by the current pool thread since a reading.
      *
-     * @param inputValue the input value
-     * @return the double
+     * @param times     the phase times to add to
+     * @param allocated the reading taken before the work, -1 if there is none
      */
-    private double sigmoidFunction(double inputValue) {
-        return 1D / (1 + Math.exp(-inputValue));
+    private static void addPoolThreadAllocations(PhaseTimes times, long allocated) {
+        if (allocated >= 0) {
+            times.addAllocated(PhaseTimes.currentThreadAllocatedBytes() - allocated);
+        }
+    }
+
+    /**
+     * Task computing the gradients of a range of chunks of a batch. The range is
+     * split in halves until each task owns a single chunk, and on the way back the
+     * right half is merged into the left half so the sums form a reduction tree
+     * ending in the first workspace.
+     */
+    private class GradientTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final DataSet batch;
+        private final int firstChunk;
+        private final int lastChunk;
+        private final int chunkCount;
+
+        // Constructor for the GradientTask class
+        GradientTask(DataSet batch, int firstChunk, int lastChunk, int chunkCount) {
+            this.batch = batch;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.chunkCount = chunkCount;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk == 1) {
+                // Computes the gradients of the samples owned by this chunk
+                int from = batch.size() * firstChunk / chunkCount;
+                int to = batch.size() * (firstChunk + 1) / chunkCount;
+                BatchWorkspace workspace = workspaces[firstChunk];
+                if (epochTimes == null) {
+                    workspace.computeGradients(batch, from, to, null);
+                    return;
+                }
+                long allocated = poolThreadAllocatedBytes();
+                workspace.computeGradients(batch, from, to, workspace.times);
+                addPoolThreadAllocations(workspace.times, allocated);
+                return;
+            }
+            int middleChunk = (firstChunk + lastChunk) >>> 1;
+            invokeAll(new GradientTask(batch, firstChunk, middleChunk, chunkCount),
+                    new GradientTask(batch, middleChunk, lastChunk, chunkCount));
+            workspaces[firstChunk].addGradients(workspaces[middleChunk]);
+        }
+    }
+
+    /**
+     * Task running asynchronous lock-free training on a range of workers. Each
+     * worker draws its own batches and applies the gradient of every sample
+     * straight to the shared weights, accepting that concurrent updates may
+     * occasionally overwrite each other.
+     */
+    private class HogwildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BatchSampler[] samplers;
+        private final int loops;
+        private final int batchSize;
+        private final int firstWorker;
+        private final int lastWorker;
+        private final int workerCount;
+
+        // Constructor for the HogwildTask class
+        HogwildTask(BatchSampler[] samplers, int loops, int batchSize, int firstWorker, int lastWorker,
+                int workerCount) {
+            this.samplers = samplers;
+            this.loops = loops;
+            this.batchSize = batchSize;
+            this.firstWorker = firstWorker;
+            this.lastWorker = lastWorker;
+            this.workerCount = workerCount;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastWorker - firstWorker == 1) {
+                BatchWorkspace workspace = workspaces[firstWorker];
+                // Runs this worker's share of the loops
+                int firstLoop = loops * firstWorker / workerCount;
+                int lastLoop = loops * (firstWorker + 1) / workerCount;
+                PhaseTimes times = epochTimes == null ? null : workspace.times;
+                long allocated = times == null ? 0 : poolThreadAllocatedBytes();
+                for (int loop = firstLoop; loop < lastLoop; loop++) {
+                    DataSet batch = nextBatch(samplers[firstWorker], batchSize, times);
+                    for (int sample = 0; sample < batch.size(); sample++) {
+                        workspace.computeGradients(batch, sample, sample + 1, times);
+                        if (times == null) {
+                            workspace.applyGradients(epochLearningRate, 1);
+                            continue;
+                        }
+                        long start = System.nanoTime();
+                        workspace.applyGradients(epochLearningRate, 1);
+                        times.addPhases(0, 0, System.nanoTime() - start);
+                    }
+                }
+                if (times != null) {
+                    addPoolThreadAllocations(times, allocated);
+                }
+                return;
+            }
+            int middleWorker = (firstWorker + lastWorker) >>> 1;
+            invokeAll(new HogwildTask(samplers, loops, batchSize, firstWorker, middleWorker, workerCount),
+                    new HogwildTask(samplers, loops, batchSize, middleWorker, lastWorker, workerCount));
+        }
     }
 }
@@ -0,0 +1,16 @@
+package digit_recognition;
+
+/**
+ * Enum representing the rules that turn the gradients into updates of the
+ * weights.
+ */
+public enum Optimizer {
+    // Step against the gradient
+    SGD,
+    // Step along a running sum of the gradients, which smooths out their noise
+    MOMENTUM,
+    // Momentum step taken from where the running sum is about to lead
+    NESTEROV,
+    // Step scaled for every weight by running estimates of the mean and variance of its gradient
+    ADAM
+}
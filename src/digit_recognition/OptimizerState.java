@@ -0,0 +1,166 @@
+package digit_recognition;
+
+/**
+ * Class holding the state of an optimizer for the parameters of a network.
+ * Every layer has one flat buffer per moment for its weights and one for its
+ * biases, laid out like the parameters they follow, so an update walks the
+ * parameters, the gradient and the moments in the same order.
+ *
+ * The gradient of a row is read as a scale times a vector, which is the shape
+ * of both the per-sample gradient (the error of a neuron times the outputs of
+ * the previous layer) and the summed gradient of a batch.
+ */
+final class OptimizerState {
+    private final Optimizer optimizer;
+    // Running mean of the gradients, or their running sum for momentum
+    private final double[][] weightMoments;
+    private final double[][] biasMoments;
+    // Running mean of the squared gradients, only kept by Adam
+    private final double[][] weightSquares;
+    private final double[][] biasSquares;
+
+    // Bias corrections of the Adam moments for the current step
+    private long steps;
+    private double firstCorrection = 1;
+    private double secondCorrection = 1;
+
+    /**
+     * Constructor for the state, with every moment at zero.
+     *
+     * @param optimizer  the optimizer, any but plain gradient descent, which
+     *                   keeps no state
+     * @param layerSizes the network layer sizes
+     */
+    OptimizerState(Optimizer optimizer, int[] layerSizes) {
+        if (optimizer == Optimizer.SGD) {
+            throw new IllegalArgumentException("Plain gradient descent keeps no state");
+        }
+        this.optimizer = optimizer;
+        this.weightMoments = new double[layerSizes.length][];
+        this.biasMoments = new double[layerSizes.length][];
+        boolean squares = optimizer == Optimizer.ADAM;
+        this.weightSquares = squares ? new double[layerSizes.length][] : null;
+        this.biasSquares = squares ? new double[layerSizes.length][] : null;
+        for (int layer = 1; layer < layerSizes.length; layer++) {
+            weightMoments[layer] = new double[layerSizes[layer] * layerSizes[layer - 1]];
+            biasMoments[layer] = new double[layerSizes[layer]];
+            if (squares) {
+                weightSquares[layer] = new double[weightMoments[layer].length];
+                biasSquares[layer] = new double[layerSizes[layer]];
+            }
+        }
+    }
+
+    /**
+     * Starts an update of every layer. Adam corrects its moments, which start
+     * at zero, by the number of updates made so far.
+     */
+    void nextStep() {
+        if (optimizer == Optimizer.ADAM) {
+            steps++;
+            firstCorrection = 1 - Math.pow(MultiLayerPerceptron.ADAM_FIRST_DECAY, steps);
+            secondCorrection = 1 - Math.pow(MultiLayerPerceptron.ADAM_SECOND_DECAY, steps);
+        }
+    }
+
+    /**
+     * Updates a row of the weights of a layer.
+     *
+     * @param layer          the layer
+     * @param weights        the weights of the layer
+     * @param offset         the position of the row in the weights
+     * @param rate           the learning rate
+     * @param scale          the scale of the gradient
+     * @param gradient       the array holding the gradient vector
+     * @param gradientOffset the position of the vector in its array
+     * @param length         the length of the row
+     */
+    void updateWeights(int layer, double[] weights, int offset, double rate, double scale, double[] gradient,
+            int gradientOffset, int length) {
+        update(weights, weightMoments[layer], weightSquares == null ? null : weightSquares[layer], offset, rate,
+                scale, gradient, gradientOffset, length);
+    }
+
+    /**
+     * Updates some biases of a layer.
+     *
+     * @param layer          the layer
+     * @param bias           the biases of the layer
+     * @param offset         the position of the first bias
+     * @param rate           the learning rate
+     * @param scale          the scale of the gradient
+     * @param gradient       the array holding the gradient vector
+     * @param gradientOffset the position of the vector in its array
+     * @param length         the number of biases
+     */
+    void updateBias(int layer, double[] bias, int offset, double rate, double scale, double[] gradient,
+            int gradientOffset, int length) {
+        update(bias, biasMoments[layer], biasSquares == null ? null : biasSquares[layer], offset, rate, scale,
+                gradient, gradientOffset, length);
+    }
+
+    /**
+     * Updates parameters from the gradient scale * gradient[gradientOffset...],
+     * keeping the moments of every parameter in step.
+     *
+     * @param parameters     the parameters
+     * @param moments        the first moments, laid out like the parameters
+     * @param squares        the second moments, or null
+     * @param offset         the position of the first parameter
+     * @param rate           the learning rate
+     * @param scale          the scale of the gradient
+     * @param gradient       the array holding the gradient vector
+     * @param gradientOffset the position of the vector in its array
+     * @param length         the number of parameters
+     */
+    private void update(double[] parameters, double[] moments, double[] squares, int offset, double rate,
+            double scale, double[] gradient, int gradientOffset, int length) {
+        double momentum = MultiLayerPerceptron.MOMENTUM;
+        switch (optimizer) {
+            case MOMENTUM:
+                for (int index = 0; index < length; index++) {
+                    double velocity = flushSubnormal(
+                            momentum * moments[offset + index] + scale * gradient[gradientOffset + index]);
+                    moments[offset + index] = velocity;
+                    parameters[offset + index] -= rate * velocity;
+                }
+                break;
+            case NESTEROV:
+                for (int index = 0; index < length; index++) {
+                    double step = scale * gradient[gradientOffset + index];
+                    double velocity = flushSubnormal(momentum * moments[offset + index] + step);
+                    moments[offset + index] = velocity;
+                    parameters[offset + index] -= rate * (step + momentum * velocity);
+                }
+                break;
+            default:
+                double firstDecay = MultiLayerPerceptron.ADAM_FIRST_DECAY;
+                double secondDecay = MultiLayerPerceptron.ADAM_SECOND_DECAY;
+                // The corrections are folded into the rate and the epsilon, saving two divisions per weight
+                double correctedRate = rate * Math.sqrt(secondCorrection) / firstCorrection;
+                double epsilon = MultiLayerPerceptron.ADAM_EPSILON * Math.sqrt(secondCorrection);
+                for (int index = 0; index < length; index++) {
+                    double step = scale * gradient[gradientOffset + index];
+                    double mean = flushSubnormal(firstDecay * moments[offset + index] + (1 - firstDecay) * step);
+                    double variance = flushSubnormal(
+                            secondDecay * squares[offset + index] + (1 - secondDecay) * step * step);
+                    moments[offset + index] = mean;
+                    squares[offset + index] = variance;
+                    parameters[offset + index] -= correctedRate * mean / (Math.sqrt(variance) + epsilon);
+                }
+        }
+    }
+
+    /**
+     * Replaces a subnormal value with zero. The moments of a weight whose
+     * gradient stays at zero, such as those of a neuron that no longer fires,
+     * decay towards zero at every step and would otherwise turn subnormal, and
+     * every operation on them takes the slow path of the processor.
+     *
+     * @param value the value
+     * @return the value, or zero if it is subnormal
+     */
+    private static double flushSubnormal(double value) {
+        return Math.abs(value) < Double.MIN_NORMAL ? 0 : value;
+    }
+}
@@ -0,0 +1,170 @@
+package digit_recognition;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Class adding up the time spent in every phase of training by one thread,
+ * with the loss of the samples it trained on and the memory it allocated. Each
+ * thread has its own, so the sums are made without synchronization and added
+ * together once the epoch is over.
+ */
+final class PhaseTimes {
+    // Allocation counter of the threads, null if the virtual machine does not keep one
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private long samplingNanos;
+    private long forwardNanos;
+    private long backwardNanos;
+    private long updateNanos;
+    private double loss;
+    private long lossSamples;
+    private long allocatedBytes;
+
+    /**
+     * Adds the time spent drawing a batch.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    void addSampling(long nanos) {
+        samplingNanos += nanos;
+    }
+
+    /**
+     * Adds the time spent in the passes and the weight update.
+     *
+     * @param forward  the time of the forward pass in nanoseconds
+     * @param backward the time of the backward pass in nanoseconds
+     * @param update   the time of the weight update in nanoseconds
+     */
+    void addPhases(long forward, long backward, long update) {
+        forwardNanos += forward;
+        backwardNanos += backward;
+        updateNanos += update;
+    }
+
+    /**
+     * Adds the loss of a sample, computed from its forward pass.
+     *
+     * @param sampleLoss the loss
+     */
+    void addLoss(double sampleLoss) {
+        loss += sampleLoss;
+        lossSamples++;
+    }
+
+    /**
+     * Adds memory allocated by the thread.
+     *
+     * @param bytes the number of bytes
+     */
+    void addAllocated(long bytes) {
+        allocatedBytes += bytes;
+    }
+
+    /**
+     * Adds the sums of another thread to these.
+     *
+     * @param other the sums of the other thread
+     */
+    void add(PhaseTimes other) {
+        samplingNanos += other.samplingNanos;
+        addPhases(other.forwardNanos, other.backwardNanos, other.updateNanos);
+        loss += other.loss;
+        lossSamples += other.lossSamples;
+        allocatedBytes += other.allocatedBytes;
+    }
+
+    /**
+     * Sets every sum back to zero.
+     */
+    void clear() {
+        samplingNanos = 0;
+        forwardNanos = 0;
+        backwardNanos = 0;
+        updateNanos = 0;
+        loss = 0;
+        lossSamples = 0;
+        allocatedBytes = 0;
+    }
+
+    /**
+     * Gets the time spent drawing batches.
+     *
+     * @return the time in nanoseconds
+     */
+    long getSamplingNanos() {
+        return samplingNanos;
+    }
+
+    /**
+     * Gets the time spent in forward passes.
+     *
+     * @return the time in nanoseconds
+     */
+    long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    /**
+     * Gets the time spent in backward passes.
+     *
+     * @return the time in nanoseconds
+     */
+    long getBackwardNanos() {
+        return backwardNanos;
+    }
+
+    /**
+     * Gets the time spent updating the weights.
+     *
+     * @return the time in nanoseconds
+     */
+    long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    /**
+     * Gets the mean loss of the samples.
+     *
+     * @return the mean loss, or NaN if no loss was added
+     */
+    double getMeanLoss() {
+        return lossSamples == 0 ? Double.NaN : loss / lossSamples;
+    }
+
+    /**
+     * Gets the memory allocated.
+     *
+     * @return the number of bytes
+     */
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Reads the number of bytes the calling thread has allocated since it
+     * started.
+     *
+     * @return the number of bytes, or -1 if the virtual machine does not count
+     *         them
+     */
+    static long currentThreadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Gets the allocation counter of the threads.
+     *
+     * @return the counter, or null if it is not available
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+}
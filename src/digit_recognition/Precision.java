@@ -0,0 +1,11 @@
+package digit_recognition;
+
+/**
+ * Enum representing the floating-point precision the network computes in.
+ */
+public enum Precision {
+    // 64-bit weights and activations, every training mode
+    DOUBLE,
+    // 32-bit weights and activations, stochastic training only
+    FLOAT
+}
@@ -0,0 +1,108 @@
+package digit_recognition;
+
+/**
+ * Class representing a compact store of the training features. Every feature
+ * is kept as one unsigned byte in a single row-major array, which is 8 times
+ * smaller than a double and keeps a whole row within one cache line.
+ *
+ * Distances are exact squared Euclidean distances computed in integer
+ * arithmetic. The square root is never taken because it does not change the
+ * order of the neighbours.
+ */
+public class QuantizedFeatures {
+    // Largest value that fits in an unsigned byte
+    private static final int MAX_VALUE = 255;
+
+    private final int rows;
+    private final int dimensions;
+    private final byte[] features;
+
+    /**
+     * Constructor for the QuantizedFeatures class.
+     *
+     * @param features the features, one row per point, with integer values
+     *                 between 0 and 255
+     */
+    public QuantizedFeatures(double[][] features) {
+        this.rows = features.length;
+        this.dimensions = rows == 0 ? 0 : features[0].length;
+        this.features = new byte[rows * dimensions];
+        for (int row = 0; row < rows; row++) {
+            quantize(features[row], this.features, row * dimensions);
+        }
+    }
+
+    /**
+     * Finds the k nearest neighbours of a query using reusable buffers.
+     *
+     * @param query   the query with integer values between 0 and 255
+     * @param k       the number of neighbours to find
+     * @param scratch the buffers receiving the neighbours
+     */
+    public void findNearestNeighbours(double[] query, int k, NeighbourScratch scratch) {
+        scratch.reset(Math.min(k, rows), dimensions);
+        byte[] quantizedQuery = scratch.quantizedQuery;
+        quantize(query, quantizedQuery, 0);
+        for (int row = 0; row < rows; row++) {
+            scratch.found = Utility.insertNeighbour(row, squaredDistance(quantizedQuery, row),
+                    scratch.neighbourIndices, scratch.neighbourDistances, scratch.found);
+        }
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between a quantized query and a
+     * row of the store.
+     *
+     * @param query the quantized query
+     * @param row   the row of the store
+     * @return the squared distance
+     */
+    public int squaredDistance(byte[] query, int row) {
+        int offset = row * dimensions;
+        int sum = 0;
+        for (int index = 0; index < dimensions; index++) {
+            int difference = (query[index] & 0xFF) - (features[offset + index] & 0xFF);
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the number of rows in the store.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of bytes used by the feature values.
+     *
+     * @return the number of bytes
+     */
+    public long getFeatureBytes() {
+        return features.length;
+    }
+
+    /**
+     * Writes a feature row into a byte array, checking that every value can be
+     * stored without loss.
+     *
+     * @param feature the feature row
+     * @param target  the target array
+     * @param offset  the offset of the row in the target array
+     */
+    private void quantize(double[] feature, byte[] target, int offset) {
+        if (feature.length != dimensions) {
+            throw new IllegalArgumentException("Feature size does not match the expected size.");
+        }
+        for (int index = 0; index < dimensions; index++) {
+            double value = feature[index];
+            if (value < 0 || value > MAX_VALUE || value != Math.rint(value)) {
+                throw new IllegalArgumentException("Feature value cannot be quantized: " + value);
+            }
+            target[offset + index] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package digit_recognition;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Interface for reading the rows of a dataset one at a time, in file order.
+ */
+public interface RowReader extends Closeable {
+
+    /**
+     * Reads the next row of the dataset.
+     *
+     * @param row the array receiving the values, at least as long as a row
+     * @return true if a row was read, false at the end of the dataset
+     * @throws IOException if the file cannot be read
+     */
+    boolean readRow(int[] row) throws IOException;
+}
@@ -0,0 +1,11 @@
+package digit_recognition;
+
+/**
+ * Enum representing the ways training batches are drawn from a dataset.
+ */
+public enum Sampling {
+    // Consecutive slices of a random permutation of the whole dataset
+    UNIFORM,
+    // Every label in proportion to its share of the dataset
+    STRATIFIED
+}
@@ -0,0 +1,12 @@
+package digit_recognition;
+
+/**
+ * Enum representing the scores on the validation set that early stopping can
+ * watch.
+ */
+public enum StoppingMetric {
+    // Mean squared error of the outputs, which keeps improving after the accuracy settles
+    LOSS,
+    // Share of the validation samples classified correctly
+    ACCURACY
+}
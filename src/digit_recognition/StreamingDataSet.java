@@ -0,0 +1,192 @@
+package digit_recognition;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.SplittableRandom;
+
+/**
+ * Class representing a dataset that is read from its file while it is used
+ * instead of being loaded into memory.
+ *
+ * Rows are read one at a time into a fixed-size shuffle buffer. Every sample
+ * handed out is drawn at random from the buffer and its slot is refilled with
+ * the next row of the file, so the memory used depends on the size of the
+ * buffer and never on the size of the file. Samples are only shuffled within
+ * the window of the buffer, so a file sorted by label needs a buffer spanning
+ * several labels, or to be shuffled once on disk.
+ */
+public class StreamingDataSet implements Closeable {
+    private final String filePath;
+    private final int inputSize;
+    private final int outputSize;
+    // Samples waiting to be drawn, the first ones of the buffer being in use
+    private final double[][] inputs;
+    private final int[] labels;
+    private int buffered;
+    private final int[] row = new int[DatasetReader.SINGLE_INPUT_SIZE];
+    private final SplittableRandom random;
+    private RowReader reader;
+    private boolean exhausted;
+
+    /**
+     * Constructor for the StreamingDataSet class.
+     *
+     * @param filePath   path to the file with the dataset, CSV or binary
+     * @param inputSize  the size of the input feature array
+     * @param outputSize the size of the output array
+     * @param bufferSize the number of samples held by the shuffle buffer
+     * @throws FileNotFoundException if the file is not found
+     */
+    public StreamingDataSet(String filePath, int inputSize, int outputSize, int bufferSize)
+            throws FileNotFoundException {
+        this(filePath, inputSize, outputSize, bufferSize, new SplittableRandom());
+    }
+
+    /**
+     * Constructor for the StreamingDataSet class, shuffling in the same order for
+     * the same seed.
+     *
+     * @param filePath   path to the file with the dataset, CSV or binary
+     * @param inputSize  the size of the input feature array
+     * @param outputSize the size of the output array
+     * @param bufferSize the number of samples held by the shuffle buffer
+     * @param seed       the seed of the shuffle
+     * @throws FileNotFoundException if the file is not found
+     */
+    public StreamingDataSet(String filePath, int inputSize, int outputSize, int bufferSize, long seed)
+            throws FileNotFoundException {
+        this(filePath, inputSize, outputSize, bufferSize, new SplittableRandom(seed));
+    }
+
+    /**
+     * Constructor for the StreamingDataSet class.
+     *
+     * @param filePath   path to the file with the dataset, CSV or binary
+     * @param inputSize  the size of the input feature array
+     * @param outputSize the size of the output array
+     * @param bufferSize the number of samples held by the shuffle buffer
+     * @param random     the source of the shuffle
+     * @throws FileNotFoundException if the file is not found
+     */
+    private StreamingDataSet(String filePath, int inputSize, int outputSize, int bufferSize,
+            SplittableRandom random) throws FileNotFoundException {
+        if (inputSize != DatasetReader.SINGLE_INPUT_SIZE - 1) {
+            throw new IllegalArgumentException("Input size does not match the expected size.");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Shuffle buffer must hold at least one sample.");
+        }
+        this.filePath = filePath;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.inputs = new double[bufferSize][inputSize];
+        this.labels = new int[bufferSize];
+        this.random = random;
+        this.reader = DatasetReader.openRows(filePath);
+    }
+
+    /**
+     * Starts a new pass over the file, dropping any samples not drawn yet.
+     */
+    public void rewind() {
+        close();
+        try {
+            reader = DatasetReader.openRows(filePath);
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffered = 0;
+        exhausted = false;
+    }
+
+    /**
+     * Draws the next batch of samples of the current pass.
+     *
+     * @param size the size of the batch
+     * @return a batch of data points, smaller than the size at the end of the
+     *         pass and empty once every sample has been drawn
+     */
+    public DataSet nextBatch(int size) {
+        DataSet batch = new DataSet(inputSize, outputSize, MultiLayerPerceptron.DATASET_FEATURE_TYPE, size);
+        // Top the buffer up so that every draw is made from a full window
+        while (buffered < inputs.length && readSample(buffered)) {
+            buffered++;
+        }
+        for (int sample = 0; sample < size && buffered > 0; sample++) {
+            int slot = random.nextInt(buffered);
+            batch.addData(inputs[slot], labels[slot]);
+            // Refill the slot from the file, or with the last sample once the file ends
+            if (!readSample(slot)) {
+                buffered--;
+                double[] drawn = inputs[slot];
+                inputs[slot] = inputs[buffered];
+                inputs[buffered] = drawn;
+                labels[slot] = labels[buffered];
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Gets the size of the input feature array.
+     *
+     * @return the input size
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Gets the size of the output array.
+     *
+     * @return the output size
+     */
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Closes the file of the current pass.
+     */
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error when closing " + filePath, e);
+        }
+    }
+
+    /**
+     * Reads the next row of the file into a slot of the buffer.
+     *
+     * @param slot the slot of the buffer
+     * @return true if a sample was read, false at the end of the file
+     */
+    private boolean readSample(int slot) {
+        if (exhausted) {
+            return false;
+        }
+        try {
+            if (!reader.readRow(row)) {
+                exhausted = true;
+                return false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error when reading " + filePath, e);
+        }
+        // The label is the last element in the row
+        int label = row[inputSize];
+        if (label < 0 || label >= outputSize) {
+            throw new IllegalArgumentException("Invalid label " + label + " in " + filePath);
+        }
+        double[] input = inputs[slot];
+        for (int featureIndex = 0; featureIndex < inputSize; featureIndex++) {
+            input[featureIndex] = row[featureIndex];
+        }
+        labels[slot] = label;
+        return true;
+    }
+}
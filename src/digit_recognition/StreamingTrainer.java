@@ -0,0 +1,42 @@
+package digit_recognition;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Class responsible for training the neural network on datasets that are too
+ * large to be loaded into memory.
+ */
+public class StreamingTrainer {
+    // Passes over the training dataset when none is given
+    private static final int DEFAULT_EPOCHS = 10;
+
+    /**
+     * Trains the network on the first dataset and tests it on the second, both
+     * streamed from their files.
+     *
+     * @param args paths to the training and testing datasets, then optionally
+     *             the number of epochs
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java digit_recognition.StreamingTrainer <training> <testing> [epochs]");
+            return;
+        }
+        int epochs = DEFAULT_EPOCHS;
+        if (args.length > 2) {
+            try {
+                epochs = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number of epochs: " + args[2]);
+                return;
+            }
+        }
+        try {
+            double[] accuracy = MultiLayerPerceptron.executeStreaming(args[0], args[1], epochs);
+            System.out.println("Training Accuracy: " + accuracy[0]);
+            System.out.println("Testing Accuracy: " + accuracy[1]);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage() + ". Please provide a valid path to the dataset.");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package digit_recognition;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event written after every training epoch, holding the same
+ * measurements as {@link EpochMetrics}.
+ */
+@Name("digit_recognition.TrainingEpoch")
+@Label("Training Epoch")
+@Category({ "Digit Recognition", "Training" })
+@Description("Throughput, loss, phase times and allocations of one training epoch")
+@StackTrace(false)
+final class TrainingEpochEvent extends Event {
+    @Label("Epoch")
+    @Description("Epoch within its training run, from 1")
+    int epoch;
+
+    @Label("Samples")
+    long samples;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Throughput")
+    @Frequency
+    double samplesPerSecond;
+
+    @Label("Loss")
+    @Description("Mean training loss of the samples")
+    double loss;
+
+    @Label("Sampling Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long samplingTime;
+
+    @Label("Forward Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long forwardTime;
+
+    @Label("Backward Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long backwardTime;
+
+    @Label("Update Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long updateTime;
+
+    @Label("Allocated")
+    @Description("Memory allocated by the training threads, -1 if it is not counted")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,17 @@
+package digit_recognition;
+
+/**
+ * Interface of the objects following the training of a network, which get the
+ * measurements of every epoch once it is trained.
+ */
+@FunctionalInterface
+public interface TrainingListener {
+
+    /**
+     * Called on the training thread after every epoch, before any validation
+     * check.
+     *
+     * @param metrics the measurements of the epoch
+     */
+    void epochCompleted(EpochMetrics metrics);
+}
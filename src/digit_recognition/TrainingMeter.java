@@ -0,0 +1,149 @@
+package digit_recognition;
+
+import jdk.jfr.EventType;
+
+/**
+ * Class measuring the epochs of a training run for the listener of the network
+ * and for Flight Recorder.
+ *
+ * An epoch is only measured when there is a listener or the epoch event is
+ * enabled in a running recording. The training loops then get the phase times
+ * of the calling thread to add to, and otherwise null, so an epoch nobody
+ * watches costs a null check per phase. Whether to measure is decided again at
+ * the start of every epoch, so a recording started in the middle of a long
+ * run sees its remaining epochs.
+ */
+final class TrainingMeter {
+    // Type of the epoch event, looked up once so that checking it is a field read
+    private static final EventType EPOCH_EVENT = EventType.getEventType(TrainingEpochEvent.class);
+
+    private final TrainingListener listener;
+    private final TrainingMode mode;
+    private final int threads;
+    // Sums of the calling thread and of every worker, added together at the end of an epoch
+    private final PhaseTimes callerTimes = new PhaseTimes();
+    private final PhaseTimes[] workerTimes;
+    private final PhaseTimes epochTimes = new PhaseTimes();
+    private final TrainingRunEvent runEvent = new TrainingRunEvent();
+    private int epochs;
+    private long samples;
+
+    // State of the epoch being measured
+    private boolean measuring;
+    private long epochStart;
+    private long epochStartAllocated;
+    private TrainingEpochEvent epochEvent;
+
+    /**
+     * Constructor for the meter, starting the training run.
+     *
+     * @param listener    the listener of the network, or null
+     * @param mode        the training mode
+     * @param threads     the number of training threads
+     * @param workerTimes the phase times of every worker, which add to their own
+     */
+    TrainingMeter(TrainingListener listener, TrainingMode mode, int threads, PhaseTimes[] workerTimes) {
+        this.listener = listener;
+        this.mode = mode;
+        this.threads = threads;
+        this.workerTimes = workerTimes;
+        runEvent.begin();
+    }
+
+    /**
+     * Starts an epoch.
+     *
+     * @return the phase times of the calling thread, or null if the epoch is not
+     *         measured
+     */
+    PhaseTimes startEpoch() {
+        boolean recording = EPOCH_EVENT.isEnabled();
+        measuring = listener != null || recording;
+        if (!measuring) {
+            return null;
+        }
+        callerTimes.clear();
+        for (PhaseTimes times : workerTimes) {
+            times.clear();
+        }
+        if (recording) {
+            epochEvent = new TrainingEpochEvent();
+            epochEvent.begin();
+        }
+        epochStartAllocated = PhaseTimes.currentThreadAllocatedBytes();
+        epochStart = System.nanoTime();
+        return callerTimes;
+    }
+
+    /**
+     * Ends an epoch, handing its measurements to the listener and to Flight
+     * Recorder.
+     *
+     * @param epochSamples the number of samples trained on
+     */
+    void finishEpoch(long epochSamples) {
+        epochs++;
+        samples += epochSamples;
+        if (!measuring) {
+            return;
+        }
+        measuring = false;
+        long elapsedNanos = System.nanoTime() - epochStart;
+        long allocated = PhaseTimes.currentThreadAllocatedBytes();
+        epochTimes.clear();
+        epochTimes.add(callerTimes);
+        for (PhaseTimes times : workerTimes) {
+            epochTimes.add(times);
+        }
+        // The workers only add what they allocate on pool threads, the calling thread is counted here
+        long allocatedBytes = allocated < 0 ? -1 : allocated - epochStartAllocated + epochTimes.getAllocatedBytes();
+        EpochMetrics metrics = new EpochMetrics(epochs, epochSamples, threads, elapsedNanos, epochTimes,
+                allocatedBytes);
+        if (epochEvent != null) {
+            commit(epochEvent, metrics);
+            epochEvent = null;
+        }
+        if (listener != null) {
+            listener.epochCompleted(metrics);
+        }
+    }
+
+    /**
+     * Ends the training run.
+     */
+    void finish() {
+        runEvent.end();
+        if (runEvent.shouldCommit()) {
+            runEvent.mode = mode.name();
+            runEvent.epochs = epochs;
+            runEvent.samples = samples;
+            runEvent.threads = threads;
+            runEvent.commit();
+        }
+    }
+
+    /**
+     * Writes the measurements of an epoch to Flight Recorder, unless the event
+     * is shorter than the threshold of the recording.
+     *
+     * @param event   the event of the epoch
+     * @param metrics the measurements
+     */
+    private static void commit(TrainingEpochEvent event, EpochMetrics metrics) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.epoch = metrics.getEpoch();
+        event.samples = metrics.getSamples();
+        event.threads = metrics.getThreads();
+        event.samplesPerSecond = metrics.getSamplesPerSecond();
+        event.loss = metrics.getLoss();
+        event.samplingTime = metrics.getSamplingNanos();
+        event.forwardTime = metrics.getForwardNanos();
+        event.backwardTime = metrics.getBackwardNanos();
+        event.updateTime = metrics.getUpdateNanos();
+        event.allocated = metrics.getAllocatedBytes();
+        event.commit();
+    }
+}
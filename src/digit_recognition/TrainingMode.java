@@ -0,0 +1,15 @@
+package digit_recognition;
+
+/**
+ * Enum representing the ways the network can be trained on a batch.
+ */
+public enum TrainingMode {
+    // Forward, backward and update for every sample of the batch
+    STOCHASTIC,
+    // Whole batch per layer as one matrix product and a single update per batch
+    MINI_BATCH,
+    // Mini-batch split across a pool of workers with a single combined update
+    PARALLEL,
+    // Asynchronous workers updating the shared weights without locking
+    HOGWILD
+}
@@ -0,0 +1,30 @@
+package digit_recognition;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning a whole training run, from the start of its
+ * first epoch to the end of its last.
+ */
+@Name("digit_recognition.TrainingRun")
+@Label("Training Run")
+@Category({ "Digit Recognition", "Training" })
+@Description("Training run of a network over one or more epochs")
+final class TrainingRunEvent extends Event {
+    @Label("Mode")
+    String mode;
+
+    @Label("Epochs")
+    @Description("Epochs trained, fewer than requested when training stopped early")
+    int epochs;
+
+    @Label("Samples")
+    long samples;
+
+    @Label("Threads")
+    int threads;
+}
@@ -57,4 +57,80 @@ public class UserInterface {
         return accuracy;
     }
 
-}
+    /**
+     * Method that prints the training throughput.
+     *
+     * @param samples      the number of samples trained on
+     * @param elapsedNanos the training time in nanoseconds
+     * @param threads      the number of training threads
+     */
+    public static void printTrainingThroughput(long samples, long elapsedNanos, int threads) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Training throughput: %.0f samples/sec (%d samples in %.2f s, %d thread(s))%n",
+                samples / seconds, samples, seconds, threads);
+    }
+
+    /**
+     * Method that prints the measurements of a training epoch.
+     *
+     * @param metrics the measurements of the epoch
+     */
+    public static void printEpochMetrics(EpochMetrics metrics) {
+        double elapsed = metrics.getElapsedNanos();
+        String allocated = metrics.getAllocatedBytes() < 0 ? "-"
+                : String.format("%.1f kB", metrics.getAllocatedBytes() / 1e3);
+        System.out.printf("Epoch %d: %.0f samples/sec, loss %.5f, sampling %.0f%%, forward %.0f%%, backward %.0f%%, "
+                + "update %.0f%% of %.2f s, %s allocated%n", metrics.getEpoch(), metrics.getSamplesPerSecond(),
+                metrics.getLoss(), 100 * metrics.getSamplingNanos() / elapsed,
+                100 * metrics.getForwardNanos() / elapsed, 100 * metrics.getBackwardNanos() / elapsed,
+                100 * metrics.getUpdateNanos() / elapsed, elapsed / 1e9, allocated);
+    }
+
+    /**
+     * Method that prints where early stopping ended a training run.
+     *
+     * @param stopping the monitor of the training run
+     * @param epochs   the most epochs the run could train for
+     */
+    public static void printEarlyStopping(EarlyStopping stopping, int epochs) {
+        System.out.printf("%s after %d of %d epochs, best validation check at epoch %d "
+                + "(loss %.5f, accuracy %.5f)%s%n", stopping.hasStopped() ? "Stopped early" : "Trained",
+                stopping.getLastEpoch(), epochs, stopping.getBestEpoch(), stopping.getBestLoss(),
+                stopping.getBestAccuracy(), stopping.isRestoringBestWeights() ? ", weights restored" : "");
+    }
+
+    /**
+     * Method that prints the results of a cross-validation, one line per fold
+     * followed by the averages.
+     *
+     * @param result the results of the cross-validation
+     */
+    public static void printCrossValidation(CrossValidation.Result result) {
+        System.out.printf("%-6s%10s%10s%12s%12s%10s%n", "Fold", "Training", "Testing", "Train acc", "Test acc",
+                "Time (s)");
+        for (CrossValidation.FoldResult fold : result.getFolds()) {
+            System.out.printf("%-6d%10d%10d%12s%12.5f%10.2f%n", fold.getFold() + 1, fold.getTrainingSize(),
+                    fold.getTestingSize(), formatAccuracy(fold.getTrainingAccuracy()), fold.getTestingAccuracy(),
+                    fold.getElapsedNanos() / 1e9);
+        }
+        if (!Double.isNaN(result.getMeanTrainingAccuracy())) {
+            System.out.println("Average Training Accuracy: " + result.getMeanTrainingAccuracy());
+        }
+        System.out.printf("Average Testing Accuracy: %s (standard deviation %.5f)%n",
+                result.getMeanTestingAccuracy(), result.getTestingAccuracyDeviation());
+        System.out.printf("Cross-validation took %.2f s with %.1f folds running at once on average%n%n",
+                result.getElapsedNanos() / 1e9, result.getConcurrency());
+    }
+
+    /**
+     * Formats an accuracy for the table of folds, with a dash when there is
+     * none.
+     *
+     * @param accuracy the accuracy, or not a number
+     * @return the formatted accuracy
+     */
+    private static String formatAccuracy(double accuracy) {
+        return Double.isNaN(accuracy) ? "-" : String.format("%.5f", accuracy);
+    }
+
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package digit_recognition;
 
-import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 /**
  * Class that contains utility methods for the application
@@ -37,6 +38,36 @@ public class Utility {
         return sum;
     }
 
+    /**
+     * Method that orders the dimensions of a set of points from the highest
+     * variance to the lowest. Visiting the dimensions in this order makes a
+     * partial distance grow as fast as possible.
+     * 
+     * @param points points with one row per point
+     * @return dimension indices ordered by decreasing variance
+     */
+    public static int[] orderDimensionsByVariance(double[][] points) {
+        int dimensions = points.length == 0 ? 0 : points[0].length;
+        double[] sums = new double[dimensions];
+        double[] squaredSums = new double[dimensions];
+        // Sum the values and squared values of every dimension
+        for (double[] point : points) {
+            for (int dimension = 0; dimension < dimensions; dimension++) {
+                sums[dimension] += point[dimension];
+                squaredSums[dimension] += point[dimension] * point[dimension];
+            }
+        }
+        double[] variances = new double[dimensions];
+        for (int dimension = 0; dimension < dimensions; dimension++) {
+            double mean = sums[dimension] / points.length;
+            variances[dimension] = squaredSums[dimension] / points.length - mean * mean;
+        }
+        // Sort the dimensions by decreasing variance, keeping the natural order on ties
+        return IntStream.range(0, dimensions).boxed()
+                .sorted((first, second) -> Double.compare(variances[second], variances[first]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
     /**
      * Method that creates a random array of specified size and fills it with
      * values of specified bounds
@@ -60,6 +91,24 @@ public class Utility {
         return returnArray;
     }
 
+    /**
+     * Method that creates a random array of specified size and fills it with
+     * values of specified bounds drawn from a given source
+     * 
+     * @param range    size of an array
+     * @param smallest lower bound
+     * @param biggest  higher bound
+     * @param random   source of randomness
+     * @return random array
+     */
+    public static double[] buildRandomArray(int range, double smallest, double biggest, SplittableRandom random) {
+        double[] returnArray = new double[Math.max(0, range)];
+        for (int index = 0; index < returnArray.length; index++) {
+            returnArray[index] = random.nextDouble() * (biggest - smallest) + smallest;
+        }
+        return returnArray;
+    }
+
     /**
      * Method that creates a 2 dimensional array of specified size and
      * fills it with values of specified bounds
@@ -97,49 +146,20 @@ public class Utility {
     }
 
     /**
-     * Generates an array of integers of specified bounds and size, but also limits
-     * the values to once in array
+     * Shuffles the first values of an array in place with the Fisher-Yates
+     * algorithm, so that every order is equally likely
      * 
-     * @param smallest lower bound
-     * @param biggest  higher bound
-     * @param size     size of random array
-     * @return array of random values
+     * @param values array to shuffle
+     * @param length number of values to shuffle from the start of the array
+     * @param random source of randomness
      */
-    public static Integer[] randomValues(int smallest, int biggest, int size) {
-        // Check if the range is valid
-        smallest--;
-
-        if (size > (biggest - smallest)) {
-            return null;
+    public static void shuffle(int[] values, int length, SplittableRandom random) {
+        for (int index = length - 1; index > 0; index--) {
+            int other = random.nextInt(index + 1);
+            int value = values[index];
+            values[index] = values[other];
+            values[other] = value;
         }
-
-        // Create the array
-        Integer[] values = new Integer[size];
-        // Fill the array with random values
-        for (int index = 0; index < size; index++) {
-            // Generate a random number
-            int number = (int) (Math.random() * (biggest - smallest + 1) + smallest);
-            // Check if the number is already in the array
-            while (containsValue(values, number)) {
-                // Generate a new random number
-                number = (int) (Math.random() * (biggest - smallest + 1) + smallest);
-            }
-            // Add the number to the array
-            values[index] = number;
-        }
-        return values;
-    }
-
-    /**
-     * Checks if array contains a value comparable extension
-     * 
-     * @param <T>   object
-     * @param array array of comparison
-     * @param value value to compare
-     * @return result
-     */
-    public static <T> boolean containsValue(T[] array, T value) {
-        return Arrays.asList(array).contains(value);
     }
 
     /**
@@ -162,4 +182,49 @@ public class Utility {
         return returnIndex;
     }
 
+    /**
+     * Inserts a candidate into a sorted list of k nearest neighbours if it comes
+     * before the current k-th neighbour. Neighbours are ordered by distance and
+     * then by index, so the list does not depend on the order of the candidates.
+     *
+     * @param index              the training index of the candidate
+     * @param distance           the squared distance of the candidate
+     * @param neighbourIndices   the neighbours found so far, nearest first
+     * @param neighbourDistances the squared distances of the neighbours
+     * @param found              the number of neighbours found so far
+     * @return the number of neighbours after the insertion
+     */
+    public static int insertNeighbour(int index, double distance, int[] neighbourIndices, double[] neighbourDistances,
+            int found) {
+        int k = neighbourIndices.length;
+        if (found == k && !isCloserNeighbour(distance, index, neighbourDistances[k - 1], neighbourIndices[k - 1])) {
+            return found;
+        }
+        // Shift the further neighbours down to make room for the candidate
+        int position = Math.min(found, k - 1);
+        while (position > 0 && isCloserNeighbour(distance, index, neighbourDistances[position - 1],
+                neighbourIndices[position - 1])) {
+            neighbourDistances[position] = neighbourDistances[position - 1];
+            neighbourIndices[position] = neighbourIndices[position - 1];
+            position--;
+        }
+        neighbourDistances[position] = distance;
+        neighbourIndices[position] = index;
+        return Math.min(found + 1, k);
+    }
+
+    /**
+     * Checks if a candidate comes before another neighbour, comparing the
+     * distance first and the training index second.
+     *
+     * @param distance      the distance of the candidate
+     * @param index         the training index of the candidate
+     * @param otherDistance the distance of the other neighbour
+     * @param otherIndex    the training index of the other neighbour
+     * @return true if the candidate comes first, false otherwise
+     */
+    private static boolean isCloserNeighbour(double distance, int index, double otherDistance, int otherIndex) {
+        return distance < otherDistance || (distance == otherDistance && index < otherIndex);
+    }
+
 }
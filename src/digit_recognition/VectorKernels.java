@@ -0,0 +1,173 @@
+package digit_recognition;
+
+import java.util.Arrays;
+
+/**
+ * Class that contains the numeric kernels used by the network.
+ *
+ * The kernels work on flat row-major arrays with explicit offsets so that a
+ * whole layer can be stored in a single primitive array. The loops are kept
+ * simple and unrolled so that the JIT compiler can map them onto SIMD
+ * instructions, which leaves the plain loop as the fallback on every platform.
+ */
+public class VectorKernels {
+
+    /**
+     * Computes the dot product of two vectors stored in flat arrays.
+     *
+     * @param first        the first array
+     * @param firstOffset  the offset of the first vector
+     * @param second       the second array
+     * @param secondOffset the offset of the second vector
+     * @param length       the length of the vectors
+     * @return the dot product
+     */
+    public static double dot(double[] first, int firstOffset, double[] second, int secondOffset, int length) {
+        // Four independent accumulators break the dependency chain of the sum
+        double sum0 = 0.0;
+        double sum1 = 0.0;
+        double sum2 = 0.0;
+        double sum3 = 0.0;
+        int index = 0;
+        int bound = length & ~3;
+        for (; index < bound; index += 4) {
+            sum0 += first[firstOffset + index] * second[secondOffset + index];
+            sum1 += first[firstOffset + index + 1] * second[secondOffset + index + 1];
+            sum2 += first[firstOffset + index + 2] * second[secondOffset + index + 2];
+            sum3 += first[firstOffset + index + 3] * second[secondOffset + index + 3];
+        }
+        // Handle the remaining elements
+        for (; index < length; index++) {
+            sum0 += first[firstOffset + index] * second[secondOffset + index];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Adds a scaled vector to another vector in place (y += alpha * x).
+     *
+     * @param alpha        the scale factor
+     * @param source       the array holding x
+     * @param sourceOffset the offset of x
+     * @param target       the array holding y
+     * @param targetOffset the offset of y
+     * @param length       the length of the vectors
+     */
+    public static void axpy(double alpha, double[] source, int sourceOffset, double[] target, int targetOffset,
+            int length) {
+        for (int index = 0; index < length; index++) {
+            target[targetOffset + index] += alpha * source[sourceOffset + index];
+        }
+    }
+
+    /**
+     * Computes the dot product of two single precision vectors stored in flat
+     * arrays.
+     *
+     * @param first        the first array
+     * @param firstOffset  the offset of the first vector
+     * @param second       the second array
+     * @param secondOffset the offset of the second vector
+     * @param length       the length of the vectors
+     * @return the dot product
+     */
+    public static float dot(float[] first, int firstOffset, float[] second, int secondOffset, int length) {
+        // Four independent accumulators break the dependency chain of the sum
+        float sum0 = 0f;
+        float sum1 = 0f;
+        float sum2 = 0f;
+        float sum3 = 0f;
+        int index = 0;
+        int bound = length & ~3;
+        for (; index < bound; index += 4) {
+            sum0 += first[firstOffset + index] * second[secondOffset + index];
+            sum1 += first[firstOffset + index + 1] * second[secondOffset + index + 1];
+            sum2 += first[firstOffset + index + 2] * second[secondOffset + index + 2];
+            sum3 += first[firstOffset + index + 3] * second[secondOffset + index + 3];
+        }
+        // Handle the remaining elements
+        for (; index < length; index++) {
+            sum0 += first[firstOffset + index] * second[secondOffset + index];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Adds a scaled single precision vector to another vector in place
+     * (y += alpha * x).
+     *
+     * @param alpha        the scale factor
+     * @param source       the array holding x
+     * @param sourceOffset the offset of x
+     * @param target       the array holding y
+     * @param targetOffset the offset of y
+     * @param length       the length of the vectors
+     */
+    public static void axpy(float alpha, float[] source, int sourceOffset, float[] target, int targetOffset,
+            int length) {
+        for (int index = 0; index < length; index++) {
+            target[targetOffset + index] += alpha * source[sourceOffset + index];
+        }
+    }
+
+    /**
+     * Multiplies a matrix by the transpose of another matrix (c = a * b^T). This
+     * is the shape of a batched layer pass where a holds one sample per row and b
+     * holds one neuron's weights per row.
+     *
+     * @param a       the left matrix with rows x inner elements
+     * @param b       the right matrix with columns x inner elements
+     * @param c       the result matrix with rows x columns elements
+     * @param rows    the number of rows of a and c
+     * @param columns the number of rows of b and columns of c
+     * @param inner   the shared dimension
+     */
+    public static void multiplyTransposed(double[] a, double[] b, double[] c, int rows, int columns, int inner) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                c[row * columns + column] = dot(a, row * inner, b, column * inner, inner);
+            }
+        }
+    }
+
+    /**
+     * Multiplies two matrices (c = a * b).
+     *
+     * @param a       the left matrix with rows x inner elements
+     * @param b       the right matrix with inner x columns elements
+     * @param c       the result matrix with rows x columns elements
+     * @param rows    the number of rows of a and c
+     * @param columns the number of columns of b and c
+     * @param inner   the shared dimension
+     */
+    public static void multiply(double[] a, double[] b, double[] c, int rows, int columns, int inner) {
+        for (int row = 0; row < rows; row++) {
+            // Builds the result row as a sum of the rows of b so every access is
+            // sequential
+            Arrays.fill(c, row * columns, (row + 1) * columns, 0.0);
+            for (int index = 0; index < inner; index++) {
+                axpy(a[row * inner + index], b, index * columns, c, row * columns, columns);
+            }
+        }
+    }
+
+    /**
+     * Adds the product of a transposed matrix and another matrix to a result
+     * matrix (c += a^T * b). This is the shape of the weight gradient of a batch.
+     *
+     * @param a       the left matrix with inner x rows elements
+     * @param b       the right matrix with inner x columns elements
+     * @param c       the result matrix with rows x columns elements
+     * @param rows    the number of columns of a and rows of c
+     * @param columns the number of columns of b and c
+     * @param inner   the shared dimension
+     */
+    public static void multiplyTransposedFirstAndAdd(double[] a, double[] b, double[] c, int rows, int columns,
+            int inner) {
+        for (int index = 0; index < inner; index++) {
+            for (int row = 0; row < rows; row++) {
+                axpy(a[index * rows + row], b, index * columns, c, row * columns, columns);
+            }
+        }
+    }
+}
@@ -5,4 +5,7 @@
  * 
  */
 module digit_recognition {
+    requires jdk.httpserver;
+    requires jdk.jfr;
+    requires jdk.management;
 }
\ No newline at end of file